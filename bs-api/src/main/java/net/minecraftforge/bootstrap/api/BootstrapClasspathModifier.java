@@ -41,4 +41,18 @@ public interface BootstrapClasspathModifier {
     default String[] arguments(String[] args) {
         return args;
     }
+
+    /**
+     * Describes everything other than the classpath and arguments that {@link #arguments(String[])} and {@link #process(List)}
+     * depend on, such as system properties, environment variables, or the contents of directories.
+     * Bootstrap already accounts for the arguments, the classpath entries, and the size and modification time of each file.
+     *
+     * If caching is enabled and the fingerprint and inputs match a previous launch, Bootstrap will replay that launch's results
+     * instead of calling this service.
+     *
+     * @return The fingerprint, or null if the results of this service should never be cached.
+     */
+    default String fingerprint(List<Path[]> classpath) {
+        return null;
+    }
 }
@@ -0,0 +1,264 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.bootstrap.api;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * I/O accounting for the boot path, enabled with the {@code bsl.io} system property.
+ *
+ * Bootstrap, its classpath modifiers, and {@link Util} do their file access through these methods, which count
+ * files opened, bytes read, and stat calls against the current phase and the jar or directory involved.
+ * Code that does its own I/O, like SecureJar, can report what it does using {@link #opened(Path)}, {@link #stat(Path)}
+ * and {@link #read(Path, long)}.
+ *
+ * When disabled every method is a plain pass through to {@link Files}.
+ */
+public final class BootstrapIO {
+    public static final boolean ENABLED = Boolean.getBoolean("bsl.io");
+
+    /*
+     * This class is loaded once by the application class loader, again by the cleaned class loader if the classpath
+     * was modified, and a third time in the Bootstrap module layer. They all need to count into the same place, and
+     * the only thing they have in common is the JDK. So the state is made of JDK types, and Bootstrap hands it from
+     * each copy to the next with share(Object).
+     */
+    private static final String COUNTERS_KEY = "counters";
+    private static final String PHASES_KEY = "phases";
+    private static volatile Map<String, LongAdder[]> counters = ENABLED ? new ConcurrentHashMap<>() : null;
+    private static volatile ThreadLocal<String> phases = ENABLED ? new ThreadLocal<>() : null;
+    private static final int OPENS = 0;
+    private static final int BYTES = 1;
+    private static final int STATS = 2;
+    private static final String NONE = "<none>";
+
+    private BootstrapIO() {}
+
+    /**
+     * This copy's counters, for Bootstrap to pass to {@link #share(Object)} on the copy of this class in the next class
+     * loader it creates. Null if accounting is disabled.
+     */
+    public static Object shared() {
+        return ENABLED ? Map.of(COUNTERS_KEY, counters, PHASES_KEY, phases) : null;
+    }
+
+    /**
+     * Makes this copy count into the same place as the one the state came from, called by Bootstrap before any of
+     * this copy's code runs.
+     */
+    @SuppressWarnings("unchecked")
+    public static void share(Object state) {
+        if (ENABLED && state instanceof Map<?, ?> map) {
+            counters = (Map<String, LongAdder[]>)map.get(COUNTERS_KEY);
+            phases = (ThreadLocal<String>)map.get(PHASES_KEY);
+        }
+    }
+
+    /**
+     * Scope for attributing I/O to a phase of the boot process, phases nest.
+     */
+    public interface Phase extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private static final Phase NOOP = () -> {};
+
+    /**
+     * Starts a new phase on this thread, which lasts until the returned scope is closed.
+     * Nested phases are recorded as {@code parent/child}.
+     */
+    public static Phase phase(String name) {
+        if (!ENABLED)
+            return NOOP;
+
+        var phases = BootstrapIO.phases;
+        var previous = phases.get();
+        phases.set(previous == null ? name : previous + '/' + name);
+        return () -> phases.set(previous);
+    }
+
+    /**
+     * @return The phase this thread is in, so work handed to other threads can be counted against it.
+     *         Null if there is none, or accounting is disabled.
+     */
+    public static String currentPhase() {
+        return ENABLED ? phases.get() : null;
+    }
+
+    /* ======================================================================
+     *                               Recording
+     * ======================================================================
+     */
+
+    private static void count(Path path, int type, long amount) {
+        var phase = phases.get();
+        var key = (phase == null ? NONE : phase) + '\t' + owner(path);
+        counters.computeIfAbsent(key, k -> new LongAdder[] { new LongAdder(), new LongAdder(), new LongAdder() })[type].add(amount);
+    }
+
+    // Things inside a jar file system are attributed to the jar
+    private static String owner(Path path) {
+        if (path == null)
+            return NONE;
+        var fs = path.getFileSystem();
+        return fs == FileSystems.getDefault() ? path.toString() : fs.toString();
+    }
+
+    public static void opened(Path path) {
+        if (ENABLED)
+            count(path, OPENS, 1);
+    }
+
+    public static void stat(Path path) {
+        if (ENABLED)
+            count(path, STATS, 1);
+    }
+
+    public static void read(Path path, long bytes) {
+        if (ENABLED && bytes > 0)
+            count(path, BYTES, bytes);
+    }
+
+    /* ======================================================================
+     *                           Counted operations
+     * ======================================================================
+     */
+
+    public static boolean exists(Path path) {
+        stat(path);
+        return Files.exists(path);
+    }
+
+    public static boolean isDirectory(Path path) {
+        stat(path);
+        return Files.isDirectory(path);
+    }
+
+    public static FileSystem newFileSystem(Path path) throws IOException {
+        opened(path);
+        return FileSystems.newFileSystem(path);
+    }
+
+    public static Stream<Path> list(Path path) throws IOException {
+        opened(path);
+        return Files.list(path);
+    }
+
+    public static byte[] readAllBytes(Path path) throws IOException {
+        opened(path);
+        var ret = Files.readAllBytes(path);
+        read(path, ret.length);
+        return ret;
+    }
+
+    public static InputStream newInputStream(Path path) throws IOException {
+        opened(path);
+        var ret = Files.newInputStream(path);
+        if (!ENABLED)
+            return ret;
+
+        return new FilterInputStream(ret) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b != -1)
+                    BootstrapIO.read(path, 1);
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int ret = super.read(b, off, len);
+                BootstrapIO.read(path, ret);
+                return ret;
+            }
+        };
+    }
+
+    /* ======================================================================
+     *                               Reporting
+     * ======================================================================
+     */
+
+    /**
+     * Totals for a phase, or for a single path within a phase.
+     */
+    public record Totals(long opens, long bytes, long stats) {
+        private Totals add(LongAdder[] counters) {
+            return new Totals(opens + counters[OPENS].sum(), bytes + counters[BYTES].sum(), stats + counters[STATS].sum());
+        }
+    }
+
+    /**
+     * @return Phase name to the totals for that phase
+     */
+    public static Map<String, Totals> byPhase() {
+        var ret = new TreeMap<String, Totals>();
+        if (ENABLED) {
+            counters.forEach((key, counters) -> {
+                var phase = key.substring(0, key.indexOf('\t'));
+                ret.put(phase, ret.getOrDefault(phase, new Totals(0, 0, 0)).add(counters));
+            });
+        }
+        return ret;
+    }
+
+    /**
+     * @return Path to the totals for that path, across every phase
+     */
+    public static Map<String, Totals> byPath() {
+        var ret = new TreeMap<String, Totals>();
+        if (ENABLED) {
+            counters.forEach((key, counters) -> {
+                var path = key.substring(key.indexOf('\t') + 1);
+                ret.put(path, ret.getOrDefault(path, new Totals(0, 0, 0)).add(counters));
+            });
+        }
+        return ret;
+    }
+
+    /**
+     * Human readable summary: totals per phase, and every path that was opened more than once.
+     */
+    public static List<String> report() {
+        var ret = new ArrayList<String>();
+        if (!ENABLED)
+            return ret;
+
+        var phases = byPhase();
+        var width = phases.keySet().stream().mapToInt(String::length).max().orElse(0) + 1;
+        ret.add("I/O by phase:");
+        phases.forEach((phase, totals) -> ret.add("  " + phase + " ".repeat(width - phase.length()) + format(totals)));
+
+        var reopened = new ArrayList<String>();
+        byPath().forEach((path, totals) -> {
+            if (totals.opens > 1)
+                reopened.add("  " + format(totals) + ' ' + path);
+        });
+        if (!reopened.isEmpty()) {
+            ret.add("Opened more than once:");
+            ret.addAll(reopened);
+        }
+        return ret;
+    }
+
+    private static String format(Totals totals) {
+        return String.format("opens=%-5d bytes=%-10d stats=%-5d", totals.opens, totals.bytes, totals.stats);
+    }
+}
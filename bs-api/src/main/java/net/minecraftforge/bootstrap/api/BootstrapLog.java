@@ -0,0 +1,233 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.bootstrap.api;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Logging for Bootstrap and its classpath modifiers, so that debug output is cheap enough to leave on.
+ *
+ * Nothing is opened or started until something is logged at a level that is enabled. With {@code bsl.log.async}
+ * lines are handed to a background thread which writes them in batches, instead of every caller waiting on
+ * {@code System.out}. Everything is flushed before Bootstrap hands off to the entry point, when it fails,
+ * and when the JVM exits.
+ * <ul>
+ *   <li>{@code bsl.log.level}: {@code error}, {@code warn}, {@code info}, {@code debug}, or {@code trace}.
+ *       {@code debug} if {@code bsl.debug} is set, otherwise {@code info}.</li>
+ *   <li>{@code bsl.log.file}: File to append to instead of {@code System.out}.</li>
+ *   <li>{@code bsl.log.async}: Set to true to write from a background thread.</li>
+ * </ul>
+ */
+public final class BootstrapLog {
+    public enum Level { ERROR, WARN, INFO, DEBUG, TRACE }
+
+    private static final String LEVEL_VALUE = System.getProperty("bsl.log.level");
+    private static final Level LEVEL = level();
+    private static final boolean ASYNC = Boolean.getBoolean("bsl.log.async");
+    private static final long FLUSH_TIMEOUT = 5;
+
+    /*
+     * Like BootstrapIO, every copy of this class has to write to the same place in the same order, and the only
+     * thing they have in common is the JDK. So the output, the queue, and whether the bad level was already reported
+     * are kept in a map of JDK types, which Bootstrap hands from each copy to the next with share(Object).
+     */
+    private static final String OUT_KEY = "out";
+    private static final String QUEUE_KEY = "queue";
+    private static final String WARNED_KEY = "warned";
+    private static volatile Map<String, Object> state = new ConcurrentHashMap<>();
+
+    private BootstrapLog() {}
+
+    // A bad level falls back to the default, it isn't worth failing the launch over
+    private static Level level() {
+        var ret = parse(LEVEL_VALUE);
+        if (ret == null)
+            return Boolean.getBoolean("bsl.debug") ? Level.DEBUG : Level.INFO;
+        return ret;
+    }
+
+    private static Level parse(String value) {
+        if (value == null)
+            return null;
+        try {
+            return Level.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * This copy's state, for Bootstrap to pass to {@link #share(Object)} on the copy of this class in the next class
+     * loader it creates.
+     */
+    public static Object shared() {
+        return state;
+    }
+
+    /**
+     * Makes this copy write to the same place as the one the state came from, called by Bootstrap before any of
+     * this copy's code runs.
+     */
+    @SuppressWarnings("unchecked")
+    public static void share(Object state) {
+        if (state instanceof Map<?, ?> map)
+            BootstrapLog.state = (Map<String, Object>)map;
+    }
+
+    private static PrintStream out() {
+        return (PrintStream)state.computeIfAbsent(OUT_KEY, k -> open());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static BlockingQueue<Object> queue() {
+        var out = out();
+        return (BlockingQueue<Object>)state.computeIfAbsent(QUEUE_KEY, k -> start(out));
+    }
+
+    private static PrintStream open() {
+        var file = System.getProperty("bsl.log.file");
+        if (file == null || file.isBlank())
+            return System.out;
+        try {
+            return new PrintStream(new BufferedOutputStream(new FileOutputStream(file, true)), false, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            System.out.println("Failed to open log file " + file + ", logging to stdout: " + e);
+            return System.out;
+        }
+    }
+
+    private static BlockingQueue<Object> start(PrintStream out) {
+        var queue = new LinkedBlockingQueue<Object>();
+        var thread = new Thread(() -> write(queue, out), "Bootstrap-Log");
+        thread.setDaemon(true);
+        thread.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> flush(queue), "Bootstrap-Log-Flush"));
+        return queue;
+    }
+
+    // Queued lines are Strings, and a latch is a flush request that is released once everything before it is written
+    private static void write(BlockingQueue<Object> queue, PrintStream out) {
+        var batch = new ArrayList<Object>();
+        try {
+            while (true) {
+                batch.add(queue.take());
+                queue.drainTo(batch);
+                for (var line : batch) {
+                    if (line instanceof CountDownLatch latch) {
+                        out.flush();
+                        latch.countDown();
+                    } else {
+                        out.println(line);
+                    }
+                }
+                out.flush();
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            out.flush();
+        }
+    }
+
+    /**
+     * @return True if messages at this level are written, use it to skip building messages nobody will see
+     */
+    public static boolean enabled(Level level) {
+        return level.ordinal() <= LEVEL.ordinal();
+    }
+
+    public static void log(Level level, String message) {
+        if (!enabled(level))
+            return;
+        warnLevel();
+        if (ASYNC) {
+            queue().add(message);
+        } else {
+            var out = out();
+            synchronized (out) {
+                out.println(message);
+                out.flush();
+            }
+        }
+    }
+
+    // Only once for every copy, the first time anything is logged or at handoff
+    private static void warnLevel() {
+        if (LEVEL_VALUE != null && !LEVEL_VALUE.isBlank() && parse(LEVEL_VALUE) == null && state.putIfAbsent(WARNED_KEY, Boolean.TRUE) == null)
+            warn("Unknown bsl.log.level " + LEVEL_VALUE + ", using " + LEVEL.name().toLowerCase(Locale.ROOT));
+    }
+
+    public static void error(String message) {
+        log(Level.ERROR, message);
+    }
+
+    public static void error(String message, Throwable throwable) {
+        if (!enabled(Level.ERROR))
+            return;
+        var trace = new StringWriter();
+        throwable.printStackTrace(new PrintWriter(trace));
+        log(Level.ERROR, message + System.lineSeparator() + trace.toString().stripTrailing());
+    }
+
+    public static void warn(String message) {
+        log(Level.WARN, message);
+    }
+
+    public static void info(String message) {
+        log(Level.INFO, message);
+    }
+
+    public static void debug(String message) {
+        log(Level.DEBUG, message);
+    }
+
+    public static void trace(String message) {
+        log(Level.TRACE, message);
+    }
+
+    /**
+     * Waits until everything logged so far, by any copy of Bootstrap, has been written.
+     */
+    @SuppressWarnings("unchecked")
+    public static void flush() {
+        if (state.get(QUEUE_KEY) instanceof BlockingQueue<?> queue)
+            flush((BlockingQueue<Object>)queue);
+        else if (state.get(OUT_KEY) instanceof PrintStream out)
+            out.flush();
+    }
+
+    /**
+     * Reports a bad {@code bsl.log.level} if nothing else did, and flushes. Called by Bootstrap right before the entry
+     * point runs.
+     */
+    public static void handoff() {
+        warnLevel();
+        flush();
+    }
+
+    private static void flush(BlockingQueue<Object> queue) {
+        var latch = new CountDownLatch(1);
+        queue.add(latch);
+        try {
+            // Bounded so a stuck stdout can't hang a failing launch or the JVM's exit
+            latch.await(FLUSH_TIMEOUT, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
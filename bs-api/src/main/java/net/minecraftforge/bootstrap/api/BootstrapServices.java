@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.bootstrap.api;
+
+import java.lang.module.Configuration;
+import java.lang.module.ResolvedModule;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.stream.Stream;
+
+/**
+ * Index of the service providers in the runtime module layer, built by Bootstrap from the module descriptors
+ * when it creates the layer. Services nothing in the layer provides are a map lookup, and the rest are loaded by
+ * {@link ServiceLoader#load(ModuleLayer, Class)} with its usual rules, without going on to the parent layers.
+ *
+ * Only providers in the runtime layer are indexed, not those in the JDK or Bootstrap's own layer. Until Bootstrap
+ * has built the layer, or if it was never involved, lookups fall back to the {@link ServiceLoader} for the context class loader.
+ */
+public final class BootstrapServices {
+    /**
+     * A provider of a service, by name, so that looking it up doesn't load anything.
+     */
+    public record Provider(String service, String module, String type) {}
+
+    private static volatile ModuleLayer layer;
+    private static volatile Map<String, List<Provider>> index;
+
+    private BootstrapServices() {}
+
+    /**
+     * Builds the index for a configuration, in the order given, usually the classpath order.
+     * Done before the layer is created, from the configuration Bootstrap defines it with.
+     */
+    public static Map<String, List<Provider>> index(Configuration config, List<String> order) {
+        var modules = new ArrayList<ResolvedModule>(config.modules());
+        var position = new HashMap<String, Integer>();
+        for (int x = 0; x < order.size(); x++)
+            position.put(order.get(x), x);
+        modules.sort((a, b) -> Integer.compare(position.getOrDefault(a.name(), Integer.MAX_VALUE), position.getOrDefault(b.name(), Integer.MAX_VALUE)));
+
+        var ret = new HashMap<String, List<Provider>>();
+        for (var module : modules) {
+            for (var provides : module.reference().descriptor().provides()) {
+                var lst = ret.computeIfAbsent(provides.service(), k -> new ArrayList<>());
+                for (var type : provides.providers())
+                    lst.add(new Provider(provides.service(), module.name(), type));
+            }
+        }
+        ret.replaceAll((k, v) -> List.copyOf(v));
+        return Collections.unmodifiableMap(ret);
+    }
+
+    /**
+     * Makes an index the one used for lookups, called by Bootstrap once the layer the index was built for exists.
+     */
+    public static void install(ModuleLayer layer, Map<String, List<Provider>> index) {
+        BootstrapServices.layer = layer;
+        BootstrapServices.index = index;
+    }
+
+    /**
+     * @return True if Bootstrap has built the index for the runtime layer
+     */
+    public static boolean available() {
+        return index != null;
+    }
+
+    /**
+     * @return Every provider of the service in the runtime layer, or an empty list if there is no index yet
+     */
+    public static List<Provider> providers(String service) {
+        var index = BootstrapServices.index;
+        return index == null ? List.of() : index.getOrDefault(service, List.of());
+    }
+
+    /**
+     * Same as {@link ServiceLoader#stream()} for the runtime layer, without its parents. Providers are only loaded
+     * and created when asked for.
+     */
+    public static <S> Stream<ServiceLoader.Provider<S>> stream(Class<S> service) {
+        var index = BootstrapServices.index;
+        if (index == null)
+            return ServiceLoader.load(service, Thread.currentThread().getContextClassLoader()).stream();
+
+        var providers = index.getOrDefault(service.getName(), List.of());
+        if (providers.isEmpty())
+            return Stream.empty();
+
+        // ServiceLoader needs us to declare that we use the service, which we can only do for every service at runtime
+        BootstrapServices.class.getModule().addUses(service);
+        var layer = BootstrapServices.layer;
+        // The layer's own providers come before its parents', and we know how many it has
+        return ServiceLoader.load(layer, service).stream().limit(providers.size());
+    }
+
+    /**
+     * Creates every provider of the service in the runtime layer.
+     */
+    public static <S> List<S> load(Class<S> service) {
+        return stream(service).map(ServiceLoader.Provider::get).toList();
+    }
+}
@@ -4,19 +4,26 @@
  */
 package net.minecraftforge.bootstrap.api;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.lang.module.ModuleDescriptor;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystem;
-import java.nio.file.FileSystems;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
-import java.util.jar.Manifest;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.jar.Attributes.Name;
-import java.util.regex.Pattern;
 
 /**
  * A small utility class that I found useful to have between Bootstrap projects
@@ -40,11 +47,14 @@ public class Util {
      *
      * @return Null if no named module is found
      */
+    @SuppressWarnings("try")
     public static ModuleInfo findModule(Collection<Path> paths) {
-        for (var path : paths) {
-            var ret = findModuleNameImpl(path, false);
-            if (ret.name != null)
-                return ret;
+        try (var phase = BootstrapIO.phase("Util")) {
+            for (var path : paths) {
+                var ret = findModuleNameImpl(path, false);
+                if (ret.name != null)
+                    return ret;
+            }
         }
         return null;
     }
@@ -57,11 +67,14 @@ public class Util {
      *
      * @return Null if no named module is found
      */
+    @SuppressWarnings("try")
     public static ModuleInfo findModule(Path... paths) {
-        for (var path : paths) {
-            var ret = findModuleNameImpl(path, false);
-            if (ret.name != null)
-                return ret;
+        try (var phase = BootstrapIO.phase("Util")) {
+            for (var path : paths) {
+                var ret = findModuleNameImpl(path, false);
+                if (ret.name != null)
+                    return ret;
+            }
         }
         return null;
     }
@@ -111,100 +124,269 @@ public class Util {
     }
 
 
+    /**
+     * Same as {@link #findModule(Path...)} for every entry of a classpath, probed in parallel on a shared pool
+     * with at most one thread per processor, whose threads stop once they have been idle for a while.
+     *
+     * @return The result for every entry, in the same order, with nulls for entries without a named module
+     * @throws NullPointerException If the classpath, or any of its entries or paths, is null. Checked before anything is probed.
+     */
+    public static List<ModuleInfo> findModules(List<Path[]> classpath) {
+        return join(classpath, false);
+    }
+
+    /**
+     * Same as {@link #findModules(List)}, on the specified executor.
+     * If the executor is null, the shared pool is used.
+     *
+     * Fails with one of the errors, if any entry couldn't be read, once every entry has been probed.
+     */
+    public static CompletableFuture<List<ModuleInfo>> findModulesAsync(List<Path[]> classpath, Executor executor) {
+        return probe(classpath, executor, false);
+    }
+
+    /**
+     * Same as {@link #findAutomaticModule(Path...)} for every entry of a classpath, probed in parallel on a shared pool
+     * with at most one thread per processor, whose threads stop once they have been idle for a while.
+     *
+     * @return The result for every entry, in the same order, with nulls for entries without a module name
+     * @throws NullPointerException If the classpath, or any of its entries or paths, is null. Checked before anything is probed.
+     */
+    public static List<ModuleInfo> findAutomaticModules(List<Path[]> classpath) {
+        return join(classpath, true);
+    }
+
+    /**
+     * Same as {@link #findAutomaticModules(List)}, on the specified executor.
+     * If the executor is null, the shared pool is used.
+     *
+     * Fails with one of the errors, if any entry couldn't be read, once every entry has been probed.
+     */
+    public static CompletableFuture<List<ModuleInfo>> findAutomaticModulesAsync(List<Path[]> classpath, Executor executor) {
+        return probe(classpath, executor, true);
+    }
+
 
     /* ======================================================================
      *                               PRIVATE
      * ======================================================================
      */
 
+    private static List<ModuleInfo> join(List<Path[]> classpath, boolean automatic) {
+        try {
+            return probe(classpath, null, automatic).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof Exception cause)
+                return sneak(cause);
+            throw e;
+        }
+    }
+
+    private static CompletableFuture<List<ModuleInfo>> probe(List<Path[]> classpath, Executor executor, boolean automatic) {
+        Objects.requireNonNull(classpath, "classpath");
+        for (int x = 0; x < classpath.size(); x++) {
+            var paths = classpath.get(x);
+            if (paths == null || Arrays.asList(paths).contains(null))
+                throw new NullPointerException("Null path in classpath entry " + x);
+        }
+        if (executor == null)
+            executor = Pool.INSTANCE;
+
+        var results = new ModuleInfo[classpath.size()];
+        var futures = new CompletableFuture<?>[classpath.size()];
+        for (int x = 0; x < futures.length; x++) {
+            int idx = x;
+            var paths = classpath.get(x);
+            futures[x] = CompletableFuture.runAsync(() -> results[idx] = automatic ? findAutomaticModule(paths) : findModule(paths), executor);
+        }
+
+        return CompletableFuture.allOf(futures).thenApply(v -> Collections.unmodifiableList(Arrays.asList(results)));
+    }
+
+    // Created the first time something is probed without an executor, and shared by every call after that
+    private static final class Pool {
+        private static final ExecutorService INSTANCE;
+        static {
+            var threads = Runtime.getRuntime().availableProcessors();
+            var count = new AtomicInteger();
+            var pool = new ThreadPoolExecutor(threads, threads, 5, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), task -> {
+                var thread = new Thread(task, "Bootstrap-Util-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            pool.allowCoreThreadTimeOut(true);
+            INSTANCE = pool;
+        }
+    }
+
     private static ModuleInfo findModuleNameImpl(Path path, boolean slow) {
         try {
-            Candidates data = null;
-            if (Files.isDirectory(path)) {
-                data = findCandidatesDirectory(path);
-            } else {
-                try (FileSystem jarFS = FileSystems.newFileSystem(path)) {
-                    var root = jarFS.getPath("/");
-                    data = findCandidatesDirectory(root);
-                }
-            }
+            if (BootstrapIO.isDirectory(path))
+                return findModuleDirectory(path);
 
-            var mf = data.mf;
-            var infos = data.modules;
-
-            InfoData info = null;
-            if (infos.size() == 1) {
-                info = infos.get(0);
-            } else if (infos.size() > 1) {
-                info = infos.stream()
-                    .sorted((a, b) -> b.version - a.version)
-                    .findFirst()
-                    .orElse(null);
+            try (FileSystem jarFS = BootstrapIO.newFileSystem(path)) {
+                return findModuleDirectory(jarFS.getPath("/"));
             }
+        } catch (IOException e) {
+            return sneak(e);
+        }
+    }
 
-            String name = null;
-            String version = null;
-            String layer = null;
+    private static ModuleInfo findModuleDirectory(Path root) throws IOException {
+        var meta_inf = findInsensitive(root, META_INF);
+        var manifest = findInsensitive(meta_inf, MANIFEST);
+        var attrs = manifest == null ? null : readMainAttributes(manifest);
 
-            if (mf != null) {
-                name = mf.getMainAttributes().getValue(AUTOMATIC_MODULE_NAME);
-                layer = mf.getMainAttributes().getValue(FORGE_MODULE_LAYER);
-            }
+        String name = null;
+        String version = null;
+        String layer = null;
+        boolean multiRelease = false;
+        if (attrs != null) {
+            name = attrs[0];
+            layer = attrs[1];
+            multiRelease = Boolean.parseBoolean(attrs[2]);
+        }
 
-            if (info != null) {
-                var desc = ModuleDescriptor.read(new ByteArrayInputStream(info.data));
+        var info = findModuleInfo(root, meta_inf, multiRelease);
+        if (info != null) {
+            try (var is = BootstrapIO.newInputStream(info)) {
+                var desc = ModuleDescriptor.read(is);
                 name = desc.name();
                 version = desc.version().map(Object::toString).orElse(null);
             }
-
-            return new ModuleInfo(name, version, layer);
-        } catch (IOException e) {
-            return sneak(e);
         }
+
+        return new ModuleInfo(name, version, layer);
     }
 
-    record InfoData(int version, byte[] data) {}
-    record Candidates(Manifest mf, List<InfoData> modules) {}
-    private static Candidates findCandidatesDirectory(Path path) {
-        try {
-            var infos = new ArrayList<InfoData>();
-            var meta_inf = findInsensitive(path, META_INF);
-            var manifest = findInsensitive(meta_inf, MANIFEST);
-            Manifest mf = null;
-
-            if (manifest != null && Files.exists(manifest)) {
-                try (var is = Files.newInputStream(manifest)) {
-                    mf = new Manifest(is);
+    /*
+     * Finds the module-info that the JVM would use, without reading any of the ones it wouldn't.
+     * Versioned entries only count in multi-release jars, and the highest one that isn't newer than us wins.
+     */
+    private static Path findModuleInfo(Path root, Path meta_inf, boolean multiRelease) throws IOException {
+        if (multiRelease) {
+            var versions = findInsensitive(meta_inf, VERSIONS);
+            if (versions != null) {
+                var candidates = new ArrayList<Path>();
+                var feature = Runtime.version().feature();
+                try (var stream = BootstrapIO.list(versions)) {
+                    stream.forEach(v -> {
+                        int version = parseVersion(v.getFileName().toString());
+                        if (version > 0 && version <= feature)
+                            candidates.add(v);
+                    });
+                }
+                candidates.sort((a, b) -> parseVersion(b.getFileName().toString()) - parseVersion(a.getFileName().toString()));
+
+                for (var candidate : candidates) {
+                    var info = candidate.resolve(MODULE_INFO);
+                    if (BootstrapIO.exists(info))
+                        return info;
                 }
             }
+        }
+
+        var info = root.resolve(MODULE_INFO);
+        return BootstrapIO.exists(info) ? info : null;
+    }
 
-            var module_info = path.resolve(MODULE_INFO);
-            if (Files.exists(module_info)) {
-                infos.add(new InfoData(0, Files.readAllBytes(module_info)));
+    // Returns -1 for anything that isn't a plain number, we don't care about those directories
+    private static int parseVersion(String name) {
+        if (name.isEmpty() || name.length() > 9)
+            return -1;
+        int ret = 0;
+        for (int x = 0; x < name.length(); x++) {
+            char c = name.charAt(x);
+            if (c < '0' || c > '9')
+                return -1;
+            ret = ret * 10 + (c - '0');
+        }
+        return ret;
+    }
+
+    private static final Name[] MAIN_ATTRIBUTES = { AUTOMATIC_MODULE_NAME, FORGE_MODULE_LAYER, MULTI_RELEASE };
+
+    /*
+     * Reads the values of MAIN_ATTRIBUTES from a manifest, in the same order.
+     * We stop at the end of the main section, signed jars can have manifests that are mostly per-entry digests,
+     * which Manifest would read all of into maps we'd just throw away.
+     */
+    private static String[] readMainAttributes(Path manifest) throws IOException {
+        if (!BootstrapIO.exists(manifest))
+            return null;
+
+        var buf = new byte[1024];
+        int len = 0;
+        int end = -1;
+        try (var is = BootstrapIO.newInputStream(manifest)) {
+            while (end == -1) {
+                if (len == buf.length)
+                    buf = Arrays.copyOf(buf, len * 2);
+                int read = is.read(buf, len, buf.length - len);
+                if (read == -1) {
+                    // Like Manifest, a last line without a line break is ignored
+                    end = len;
+                    while (end > 0 && buf[end - 1] != '\n' && buf[end - 1] != '\r')
+                        end--;
+                } else {
+                    // Back up a little, so we see a line break that was split across reads
+                    int from = Math.max(0, len - 2);
+                    len += read;
+                    end = mainSectionEnd(buf, from, len);
+                }
             }
+        }
 
-            if (isMultiRelease(mf)) {
-                var versions = findInsensitive(meta_inf, VERSIONS);
-                if (versions != null) {
-                    Files.list(versions)
-                    .forEach(v -> {
-                        try {
-                            int version = Integer.parseInt(v.getFileName().toString());
-                            var mod_info = v.resolve(MODULE_INFO);
-                            if (version <= Runtime.version().feature() && Files.exists(mod_info))
-                                infos.add(new InfoData(version, Files.readAllBytes(mod_info)));
-                        } catch (NumberFormatException e) {
-                            // If its not a numerical directory we don't care
-                        } catch (IOException e) {
-                            sneak(e);
+        var ret = new String[MAIN_ATTRIBUTES.length];
+        var text = new String(buf, 0, end, StandardCharsets.UTF_8);
+        int current = -1;
+        for (int pos = 0; pos < end && pos < text.length(); ) {
+            int eol = pos;
+            while (eol < text.length() && text.charAt(eol) != '\n' && text.charAt(eol) != '\r')
+                eol++;
+
+            if (eol > pos) {
+                if (text.charAt(pos) == ' ') {
+                    // Continuation of the previous line
+                    if (current != -1)
+                        ret[current] += text.substring(pos + 1, eol);
+                } else {
+                    current = -1;
+                    int colon = text.indexOf(": ", pos);
+                    if (colon != -1 && colon < eol) {
+                        for (int x = 0; x < MAIN_ATTRIBUTES.length; x++) {
+                            var key = MAIN_ATTRIBUTES[x].toString();
+                            if (colon - pos == key.length() && text.regionMatches(true, pos, key, 0, key.length())) {
+                                current = x;
+                                ret[x] = text.substring(colon + 2, eol);
+                                break;
+                            }
                         }
-                    });
+                    }
                 }
             }
-            return new Candidates(mf, infos);
-        } catch (IOException e) {
-            return sneak(e);
+
+            pos = eol;
+            if (pos < text.length() && text.charAt(pos) == '\r')
+                pos++;
+            if (pos < text.length() && text.charAt(pos) == '\n')
+                pos++;
         }
+        return ret;
+    }
+
+    // Index of the line break that ends the main section, which is the first empty line. Or -1 if we havn't read it yet.
+    private static int mainSectionEnd(byte[] buf, int from, int len) {
+        for (int x = from; x < len; x++) {
+            if (buf[x] != '\n' && buf[x] != '\r')
+                continue;
+            int next = x + 1;
+            if (buf[x] == '\r' && next < len && buf[next] == '\n')
+                next++;
+            if (next < len && (buf[next] == '\n' || buf[next] == '\r'))
+                return x;
+        }
+        return -1;
     }
 
     private static Path findInsensitive(Path root, String name) {
@@ -213,12 +395,12 @@ public class Util {
 
         // Fast path, its the correct case or on a file system that doesn't care about case
         var child = root.resolve(name);
-        if (Files.exists(child))
+        if (BootstrapIO.exists(child))
            return child;
 
-        try {
-            // If we can't find it fall back to listing all files and manually check, its slow but whatever
-            return Files.list(root)
+        // If we can't find it fall back to listing all files and manually check, its slow but whatever
+        try (var stream = BootstrapIO.list(root)) {
+            return stream
                 .filter(p -> name.equalsIgnoreCase(p.getFileName().toString()))
                 .findFirst()
                 .orElse(null);
@@ -227,10 +409,6 @@ public class Util {
         }
     }
 
-    private static boolean isMultiRelease(Manifest mf) {
-        return mf != null && Boolean.parseBoolean(mf.getMainAttributes().getValue(MULTI_RELEASE));
-    }
-
     @SuppressWarnings("unchecked")
     private static <E extends Throwable, R> R sneak(Exception exception) throws E {
         throw (E)exception;
@@ -246,10 +424,8 @@ public class Util {
             return null;
 
         String version = null;
-        var matcher = Patterns.DASH_VERSION.matcher(name);
-        if (matcher.find()) {
-            int start = matcher.start();
-
+        int start = dashVersion(name);
+        if (start != -1) {
             // attempt to parse the tail as a version string
             try {
                 String tail = name.substring(start + 1);
@@ -263,32 +439,38 @@ public class Util {
         return new ModuleInfo(cleanModuleName(name), version, null);
     }
 
-    // Stolen from jdk.internal.module.ModulePath
-    private static class Patterns {
-        static final Pattern DASH_VERSION = Pattern.compile("-(\\d+(\\.|$))");
-        static final Pattern NON_ALPHANUM = Pattern.compile("[^A-Za-z0-9]");
-        static final Pattern REPEATING_DOTS = Pattern.compile("(\\.)(\\1)+");
-        static final Pattern LEADING_DOTS = Pattern.compile("^\\.");
-        static final Pattern TRAILING_DOTS = Pattern.compile("\\.$");
+    // Same as jdk.internal.module.ModulePath's "-(\\d+(\\.|$))" regex, index of the first dash followed by digits then a dot or the end
+    private static int dashVersion(String name) {
+        int len = name.length();
+        for (int x = name.indexOf('-'); x != -1; x = name.indexOf('-', x + 1)) {
+            int y = x + 1;
+            while (y < len && isDigit(name.charAt(y)))
+                y++;
+            if (y > x + 1 && (y == len || name.charAt(y) == '.'))
+                return x;
+        }
+        return -1;
     }
 
-    // Stolen from jdk.internal.module.ModulePath
+    // Same as jdk.internal.module.ModulePath: Replace non-alphanumeric with dots, collapse repeating dots, and drop leading and trailing dots
     private static String cleanModuleName(String mn) {
-        // replace non-alphanumeric
-        mn = Patterns.NON_ALPHANUM.matcher(mn).replaceAll(".");
-
-        // collapse repeating dots
-        mn = Patterns.REPEATING_DOTS.matcher(mn).replaceAll(".");
+        var ret = new StringBuilder(mn.length());
+        for (int x = 0; x < mn.length(); x++) {
+            char c = mn.charAt(x);
+            if (isDigit(c) || (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z'))
+                ret.append(c);
+            else if (ret.length() > 0 && ret.charAt(ret.length() - 1) != '.')
+                ret.append('.');
+        }
 
-        // drop leading dots
-        if (!mn.isEmpty() && mn.charAt(0) == '.')
-            mn = Patterns.LEADING_DOTS.matcher(mn).replaceAll("");
+        int len = ret.length();
+        if (len > 0 && ret.charAt(len - 1) == '.')
+            ret.setLength(len - 1);
 
-        // drop trailing dots
-        int len = mn.length();
-        if (len > 0 && mn.charAt(len-1) == '.')
-            mn = Patterns.TRAILING_DOTS.matcher(mn).replaceAll("");
+        return ret.toString();
+    }
 
-        return mn;
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
     }
 }
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.bootstrap.api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import net.minecraftforge.bootstrap.api.BootstrapIO.Totals;
+
+/**
+ * Runs with {@code bsl.io} set by the build. The counters are global, so every test uses its own phases and files.
+ */
+public class BootstrapIOTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    public void countsKnownJar() throws IOException {
+        assertTrue(BootstrapIO.ENABLED, "bsl.io has to be set for these tests");
+        var jar = zip(dir.resolve("known.jar"), "a.txt", "hello", "b/c.txt", "world!");
+        var file = Files.writeString(dir.resolve("plain.txt"), "0123456789");
+
+        try (var phase = BootstrapIO.phase("known")) {
+            BootstrapIO.exists(jar);
+            BootstrapIO.isDirectory(dir);
+            assertEquals(10, BootstrapIO.readAllBytes(file).length);
+            try (var fs = BootstrapIO.newFileSystem(jar)) {
+                try (var in = BootstrapIO.newInputStream(fs.getPath("a.txt"))) {
+                    assertEquals(5, in.readAllBytes().length);
+                }
+                try (var in = BootstrapIO.newInputStream(fs.getPath("b/c.txt"))) {
+                    in.read();
+                    assertEquals(5, in.read(new byte[16]));
+                    assertEquals(-1, in.read());
+                }
+            }
+        }
+
+        assertEquals(new Totals(4, 21, 2), BootstrapIO.byPhase().get("known"));
+        // Anything read from inside the jar is counted against the jar
+        var paths = BootstrapIO.byPath();
+        assertEquals(new Totals(3, 11, 1), paths.get(jar.toString()));
+        assertEquals(new Totals(1, 10, 0), paths.get(file.toString()));
+        assertEquals(new Totals(0, 0, 1), paths.get(dir.toString()));
+    }
+
+    @Test
+    public void nestedPhases() throws IOException {
+        var file = Files.writeString(dir.resolve("nested.txt"), "x");
+
+        try (var outer = BootstrapIO.phase("outer")) {
+            BootstrapIO.exists(file);
+            try (var inner = BootstrapIO.phase("inner")) {
+                assertEquals("outer/inner", BootstrapIO.currentPhase());
+                BootstrapIO.exists(file);
+                BootstrapIO.readAllBytes(file);
+            }
+            assertEquals("outer", BootstrapIO.currentPhase());
+        }
+        assertNull(BootstrapIO.currentPhase());
+
+        var phases = BootstrapIO.byPhase();
+        assertEquals(new Totals(0, 0, 1), phases.get("outer"));
+        assertEquals(new Totals(1, 1, 1), phases.get("outer/inner"));
+    }
+
+    // Bootstrap loads this class up to three times, the copies have to count into the same place and phase
+    @Test
+    public void sharedWithCopies() throws Exception {
+        var file = Files.writeString(dir.resolve("shared.txt"), "shared");
+        var location = BootstrapIO.class.getProtectionDomain().getCodeSource().getLocation();
+
+        try (var cl = new URLClassLoader(new URL[] { location }, null)) {
+            var copy = Class.forName(BootstrapIO.class.getName(), true, cl);
+            assertNotSame(BootstrapIO.class, copy);
+            copy.getMethod("share", Object.class).invoke(null, BootstrapIO.shared());
+
+            try (var phase = BootstrapIO.phase("shared")) {
+                copy.getMethod("stat", Path.class).invoke(null, file);
+                copy.getMethod("readAllBytes", Path.class).invoke(null, file);
+            }
+        }
+
+        assertEquals(new Totals(1, 6, 1), BootstrapIO.byPhase().get("shared"));
+    }
+
+    private static Path zip(Path path, String... entries) throws IOException {
+        try (var out = new ZipOutputStream(Files.newOutputStream(path))) {
+            for (int x = 0; x < entries.length; x += 2) {
+                out.putNextEntry(new ZipEntry(entries[x]));
+                out.write(entries[x + 1].getBytes(StandardCharsets.UTF_8));
+                out.closeEntry();
+            }
+        }
+        return path;
+    }
+}
@@ -0,0 +1,352 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.bootstrap.api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.module.ModuleDescriptor;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import net.minecraftforge.bootstrap.api.Util.ModuleInfo;
+
+/**
+ * Util's probing was rewritten to avoid regexes, to only parse the manifest's main section, and to only read the
+ * module-info that would be used. These check that it still agrees with the original implementation, kept in
+ * {@link Baseline}, on jars built to hit the edge cases of each.
+ */
+public class UtilTest {
+    private static final String MANIFEST = "META-INF/MANIFEST.MF";
+    private static final int FEATURE = Runtime.version().feature();
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void automaticNames() throws IOException {
+        var names = List.of(
+            "simple.jar", "foo-bar-1.2.3.jar", "guava-31.1-jre.jar", "lib-1.0-1.jar", "a-1b.jar", "a-1.jar", "a-1-2.3.jar",
+            "x-.jar", "x--1.jar", "-leading-1.0.jar", "trailing.-.jar", "...jar", ".jar", "1.2.jar", "9-9.jar",
+            "foo_bar--baz..qux-2.jar", "a--b-10.20.30-SNAPSHOT.jar", "under_score-v1.jar", "mixed-Case-1.0.0+build.7.jar",
+            "dots...in....name-0.jar", "space in name-1.0.jar", "tail-1.2.3.jar.jar",
+            "no-version-here.jar", "trailing-dash-.jar", "digits-123", "not-a-jar-1.0.zip"
+        );
+
+        for (var name : names) {
+            var jar = zip(dir.resolve(name), Map.of("a/A.class", new byte[0]));
+            assertEquals(Baseline.findAutomaticModule(jar), Util.findAutomaticModule(jar), name);
+        }
+    }
+
+    @Test
+    public void mainSectionOnly() throws IOException {
+        var manifests = new LinkedHashMap<String, byte[]>();
+
+        var big = new Manifest();
+        var main = big.getMainAttributes();
+        main.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        // Long enough to be split across continuation lines, and to cross the first read
+        main.putValue("Automatic-Module-Name", "net.minecraftforge." + "very.long.module.name.".repeat(60) + "end");
+        main.putValue("Forge-Module-Layer", "GAME");
+        for (int x = 0; x < 200; x++) {
+            var attrs = new Attributes();
+            attrs.putValue("SHA-256-Digest", "AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA=");
+            attrs.putValue("Automatic-Module-Name", "not.the.main.section");
+            big.getEntries().put("a/Class" + x + ".class", attrs);
+        }
+        var out = new ByteArrayOutputStream();
+        big.write(out);
+        manifests.put("signed", out.toByteArray());
+
+        manifests.put("lf", text("Manifest-Version: 1.0\nAutomatic-Module-Name: lf.name\nForge-Module-Layer: BOOT\n\nName: x\nForge-Module-Layer: GAME\n"));
+        manifests.put("cr", text("Manifest-Version: 1.0\rAutomatic-Module-Name: cr.name\r\rName: x\rAutomatic-Module-Name: wrong\r"));
+        manifests.put("case", text("Manifest-Version: 1.0\r\nautomatic-module-name: lower.case\r\nFORGE-MODULE-LAYER: SERVICE\r\n"));
+        manifests.put("no-newline", text("Manifest-Version: 1.0\r\nAutomatic-Module-Name: no.newline"));
+        manifests.put("continued", text("Manifest-Version: 1.0\r\nAutomatic-Module-Name: con\r\n tinued.na\r\n me\r\n\r\nName: x\r\n"));
+        manifests.put("section-only", text("Manifest-Version: 1.0\r\n\r\nName: x\r\nAutomatic-Module-Name: section.only\r\n"));
+        manifests.put("padded", text("Manifest-Version: 1.0\r\n" + "Padding: xxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxx\r\n".repeat(40) + "Automatic-Module-Name: late.name\r\n\r\n"));
+        manifests.put("empty", new byte[0]);
+
+        for (var entry : manifests.entrySet()) {
+            var jar = zip(dir.resolve(entry.getKey() + ".jar"), Map.of(MANIFEST, entry.getValue()));
+            var expected = Baseline.findModule(jar);
+            assertEquals(expected, Util.findModule(jar), entry.getKey());
+            assertEquals(expected, Util.findModules(List.<Path[]>of(new Path[] { jar })).get(0), entry.getKey());
+        }
+        assertNotNull(Util.findModule(dir.resolve("signed.jar")), "The fixture has to have a name to compare");
+    }
+
+    @Test
+    public void versionedModuleInfo() throws IOException {
+        var multiRelease = text("Manifest-Version: 1.0\r\nMulti-Release: true\r\n\r\n");
+        var plain = text("Manifest-Version: 1.0\r\n\r\n");
+
+        var jars = new LinkedHashMap<String, Map<String, byte[]>>();
+        jars.put("root-only", Map.of(MANIFEST, multiRelease, "module-info.class", moduleInfo("root", "1")));
+        jars.put("versioned", Map.of(
+            MANIFEST, multiRelease,
+            "module-info.class", moduleInfo("root", "1"),
+            "META-INF/versions/9/module-info.class", moduleInfo("nine", "9"),
+            "META-INF/versions/11/module-info.class", moduleInfo("eleven", "11"),
+            "META-INF/versions/" + (FEATURE + 1) + "/module-info.class", moduleInfo("future", "99"),
+            "META-INF/versions/abc/module-info.class", moduleInfo("abc", "0")
+        ));
+        jars.put("versioned-only", Map.of(MANIFEST, multiRelease, "META-INF/versions/9/module-info.class", moduleInfo("nine", "9")));
+        jars.put("not-multi-release", Map.of(
+            MANIFEST, plain,
+            "module-info.class", moduleInfo("root", "1"),
+            "META-INF/versions/9/module-info.class", moduleInfo("nine", "9")
+        ));
+        jars.put("empty-version", Map.of(
+            MANIFEST, multiRelease,
+            "module-info.class", moduleInfo("root", "1"),
+            "META-INF/versions/11/other.txt", new byte[0],
+            "META-INF/versions/9/module-info.class", moduleInfo("nine", null)
+        ));
+        jars.put("future-only", Map.of(MANIFEST, multiRelease, "META-INF/versions/" + (FEATURE + 1) + "/module-info.class", moduleInfo("future", "99")));
+        jars.put("manifest-name", Map.of(
+            MANIFEST, text("Manifest-Version: 1.0\r\nMulti-Release: true\r\nAutomatic-Module-Name: manifest\r\nForge-Module-Layer: BOOT\r\n\r\n"),
+            "META-INF/versions/9/module-info.class", moduleInfo("nine", "9")
+        ));
+
+        for (var entry : jars.entrySet()) {
+            var jar = zip(dir.resolve(entry.getKey() + ".jar"), entry.getValue());
+            assertEquals(Baseline.findModule(jar), Util.findModule(jar), entry.getKey());
+
+            // Exploded the same way, like build output
+            var exploded = dir.resolve(entry.getKey());
+            for (var file : entry.getValue().entrySet()) {
+                var target = exploded.resolve(file.getKey());
+                Files.createDirectories(target.getParent());
+                Files.write(target, file.getValue());
+            }
+            assertEquals(Baseline.findModule(exploded), Util.findModule(exploded), entry.getKey() + " exploded");
+        }
+    }
+
+    @Test
+    public void sharedPool() throws IOException {
+        var jar = zip(dir.resolve("pool-1.0.jar"), Map.of("a/A.class", new byte[0]));
+        var classpath = new ArrayList<Path[]>();
+        for (int x = 0; x < 8; x++)
+            classpath.add(new Path[] { jar });
+
+        for (int x = 0; x < 50; x++)
+            assertEquals(8, Util.findAutomaticModules(classpath).size());
+
+        long threads = Thread.getAllStackTraces().keySet().stream().filter(t -> t.getName().startsWith("Bootstrap-Util-")).count();
+        assertTrue(threads <= Runtime.getRuntime().availableProcessors(), "Every call has to share one pool, found " + threads + " threads");
+    }
+
+    @Test
+    public void nullEntries() {
+        var nullPath = new ArrayList<Path[]>();
+        nullPath.add(new Path[] { dir.resolve("never-read.jar") });
+        nullPath.add(new Path[] { null });
+        var nullEntry = new ArrayList<Path[]>();
+        nullEntry.add(null);
+
+        assertThrows(NullPointerException.class, () -> Util.findModules(null));
+        assertThrows(NullPointerException.class, () -> Util.findModules(nullPath));
+        assertThrows(NullPointerException.class, () -> Util.findAutomaticModules(nullEntry));
+        // Up front, not from a worker through the future
+        assertThrows(NullPointerException.class, () -> Util.findModulesAsync(nullPath, null));
+        assertThrows(NullPointerException.class, () -> Util.findAutomaticModulesAsync(nullEntry, Runnable::run));
+    }
+
+    private static byte[] text(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static Path zip(Path path, Map<String, byte[]> entries) throws IOException {
+        try (var out = new ZipOutputStream(Files.newOutputStream(path))) {
+            for (var entry : entries.entrySet()) {
+                out.putNextEntry(new ZipEntry(entry.getKey()));
+                out.write(entry.getValue());
+                out.closeEntry();
+            }
+        }
+        return path;
+    }
+
+    // The smallest module-info the JVM accepts, a module that only requires java.base
+    private static byte[] moduleInfo(String name, String version) throws IOException {
+        var pool = new ArrayList<String>();
+        pool.add("module-info");
+        pool.add("Module");
+        pool.add(name);
+        pool.add("java.base");
+        if (version != null)
+            pool.add(version);
+
+        var buf = new ByteArrayOutputStream();
+        var out = new DataOutputStream(buf);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(53);
+        out.writeShort(pool.size() + 4);
+        for (var value : pool) {
+            out.writeByte(1); // Utf8
+            out.writeUTF(value);
+        }
+        out.writeByte(7);  // #n+1 Class module-info
+        out.writeShort(1);
+        out.writeByte(19); // #n+2 Module name
+        out.writeShort(3);
+        out.writeByte(19); // #n+3 Module java.base
+        out.writeShort(4);
+        int thisClass = pool.size() + 1;
+
+        out.writeShort(0x8000); // ACC_MODULE
+        out.writeShort(thisClass);
+        out.writeShort(0); // super
+        out.writeShort(0); // interfaces
+        out.writeShort(0); // fields
+        out.writeShort(0); // methods
+        out.writeShort(1); // attributes
+        out.writeShort(2); // Module
+        out.writeInt(16 + 6);
+        out.writeShort(thisClass + 1);
+        out.writeShort(0); // flags
+        out.writeShort(version == null ? 0 : 5);
+        out.writeShort(1); // requires
+        out.writeShort(thisClass + 2);
+        out.writeShort(0x8000); // ACC_MANDATED
+        out.writeShort(0);
+        out.writeShort(0); // exports
+        out.writeShort(0); // opens
+        out.writeShort(0); // uses
+        out.writeShort(0); // provides
+        out.flush();
+        return buf.toByteArray();
+    }
+
+    /**
+     * Util's probing as it was before the rewrite: the whole manifest read with {@link Manifest}, every module-info
+     * read up front, and the file name cleaned up with jdk.internal.module.ModulePath's regexes.
+     */
+    private static final class Baseline {
+        private static final Pattern DASH_VERSION = Pattern.compile("-(\\d+(\\.|$))");
+        private static final Pattern NON_ALPHANUM = Pattern.compile("[^A-Za-z0-9]");
+        private static final Pattern REPEATING_DOTS = Pattern.compile("(\\.)(\\1)+");
+        private static final Pattern LEADING_DOTS = Pattern.compile("^\\.");
+        private static final Pattern TRAILING_DOTS = Pattern.compile("\\.$");
+
+        private record InfoData(int version, byte[] data) {}
+
+        static ModuleInfo findAutomaticModule(Path path) throws IOException {
+            var ret = findModule(path);
+            if (ret != null)
+                return ret;
+
+            var name = path.getFileName().toString();
+            if (!name.endsWith(".jar"))
+                return null;
+
+            String version = null;
+            var matcher = DASH_VERSION.matcher(name);
+            if (matcher.find()) {
+                int start = matcher.start();
+                try {
+                    String tail = name.substring(start + 1);
+                    ModuleDescriptor.Version.parse(tail);
+                    version = tail;
+                } catch (IllegalArgumentException ignore) { }
+                name = name.substring(0, start);
+            }
+
+            name = NON_ALPHANUM.matcher(name).replaceAll(".");
+            name = REPEATING_DOTS.matcher(name).replaceAll(".");
+            if (!name.isEmpty() && name.charAt(0) == '.')
+                name = LEADING_DOTS.matcher(name).replaceAll("");
+            int len = name.length();
+            if (len > 0 && name.charAt(len - 1) == '.')
+                name = TRAILING_DOTS.matcher(name).replaceAll("");
+
+            return new ModuleInfo(name, version, null);
+        }
+
+        static ModuleInfo findModule(Path path) throws IOException {
+            ModuleInfo ret;
+            if (Files.isDirectory(path)) {
+                ret = findModuleDirectory(path);
+            } else {
+                try (var fs = FileSystems.newFileSystem(path)) {
+                    ret = findModuleDirectory(fs.getPath("/"));
+                }
+            }
+            return ret.name() == null ? null : ret;
+        }
+
+        private static ModuleInfo findModuleDirectory(Path root) throws IOException {
+            var infos = new ArrayList<InfoData>();
+            Manifest mf = null;
+            var manifest = root.resolve(MANIFEST);
+            if (Files.exists(manifest)) {
+                try (var is = Files.newInputStream(manifest)) {
+                    mf = new Manifest(is);
+                }
+            }
+
+            var moduleInfo = root.resolve("module-info.class");
+            if (Files.exists(moduleInfo))
+                infos.add(new InfoData(0, Files.readAllBytes(moduleInfo)));
+
+            var versions = root.resolve("META-INF/versions");
+            if (mf != null && Boolean.parseBoolean(mf.getMainAttributes().getValue("Multi-Release")) && Files.isDirectory(versions)) {
+                try (var stream = Files.list(versions)) {
+                    for (var v : (Iterable<Path>)stream::iterator) {
+                        try {
+                            int version = Integer.parseInt(v.getFileName().toString().replace("/", ""));
+                            var info = v.resolve("module-info.class");
+                            if (version <= FEATURE && Files.exists(info))
+                                infos.add(new InfoData(version, Files.readAllBytes(info)));
+                        } catch (NumberFormatException e) {
+                            // Not a version directory
+                        }
+                    }
+                }
+            }
+
+            String name = null;
+            String version = null;
+            String layer = null;
+            if (mf != null) {
+                name = mf.getMainAttributes().getValue("Automatic-Module-Name");
+                layer = mf.getMainAttributes().getValue("Forge-Module-Layer");
+            }
+
+            var info = infos.stream().sorted((a, b) -> b.version - a.version).findFirst().orElse(null);
+            if (info != null) {
+                var desc = ModuleDescriptor.read(new ByteArrayInputStream(info.data));
+                name = desc.name();
+                version = desc.version().map(Object::toString).orElse(null);
+            }
+
+            return new ModuleInfo(name, version, layer);
+        }
+    }
+}
@@ -5,6 +5,7 @@
 package net.minecraftforge.bootstrap.dev;
 
 import java.io.File;
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
@@ -16,15 +17,19 @@ import java.util.Map;
 import java.util.TreeMap;
 
 import net.minecraftforge.bootstrap.api.BootstrapClasspathModifier;
+import net.minecraftforge.bootstrap.api.BootstrapIO;
+import net.minecraftforge.bootstrap.api.BootstrapLog;
 import net.minecraftforge.bootstrap.api.Util;
 
 public class BootstrapDevClasspathFixer implements BootstrapClasspathModifier {
-    private static final boolean DEBUG    = Boolean.parseBoolean(System.getProperty("bsl.debug",        "false"));
+    private static final boolean DEBUG    = BootstrapLog.enabled(BootstrapLog.Level.DEBUG);
     private static final boolean AUTO     = Boolean.parseBoolean(System.getProperty("bsl.dev.auto",     "true" ));
     private static final boolean EXPLICIT = Boolean.parseBoolean(System.getProperty("bsl.dev.explicit", "true" ));
+    // Files inside exploded directories that Util.findModule reads to determine the module name
+    private static final String[] MODULE_FILES = { "module-info.class", "META-INF/MANIFEST.MF", "META-INF/versions" };
 
     static void log(String message) {
-        System.out.println(message);
+        BootstrapLog.debug(message);
     }
 
     @Override
@@ -45,6 +50,39 @@ public class BootstrapDevClasspathFixer implements BootstrapClasspathModifier {
         return ret;
     }
 
+    @Override
+    public String fingerprint(List<Path[]> classpath) {
+        var ret = new StringBuilder();
+        ret.append("explicit=").append(EXPLICIT).append(";auto=").append(AUTO);
+
+        // MOD_CLASSES entries can be relative
+        if (EXPLICIT)
+            ret.append(";dir=").append(Path.of("").toAbsolutePath()).append(";MOD_CLASSES=").append(System.getenv("MOD_CLASSES"));
+
+        // Bootstrap tracks the jar files themselves, but the module names of directories come from the files inside them
+        if (AUTO) {
+            for (var paths : classpath) {
+                for (var path : paths) {
+                    if (!BootstrapIO.isDirectory(path))
+                        continue;
+                    for (var name : MODULE_FILES)
+                        ret.append(';').append(stamp(path.resolve(name)));
+                }
+            }
+        }
+
+        return ret.toString();
+    }
+
+    private static String stamp(Path path) {
+        BootstrapIO.stat(path);
+        try {
+            return Files.getLastModifiedTime(path).toMillis() + ":" + Files.size(path);
+        } catch (IOException e) {
+            return "missing";
+        }
+    }
+
     /**
      * Uses the old MOD_CLASSES environment variable to attempt merge paths together.
      * This is really hackey and relies on pre-launch things to build the correct mappings for this.
@@ -151,7 +189,7 @@ public class BootstrapDevClasspathFixer implements BootstrapClasspathModifier {
             }
 
             var path = paths[0];
-            if (Files.isDirectory(path)) {
+            if (BootstrapIO.isDirectory(path)) {
                 String prj = null;
                 String sourceset = path.getFileName().toString();
 
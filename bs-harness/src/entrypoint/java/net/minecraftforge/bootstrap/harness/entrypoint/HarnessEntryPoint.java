@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.bootstrap.harness.entrypoint;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import net.minecraftforge.bootstrap.api.BootstrapEntryPoint;
+import net.minecraftforge.bootstrap.api.BootstrapIO;
+import net.minecraftforge.bootstrap.api.Util;
+
+/**
+ * Entry point for the benchmark's synthetic installations.
+ *
+ * Prints a marker as soon as Bootstrap hands off to us, then loads every class listed in the file named by
+ * the {@code harness.classes} system property and prints a second marker. The harness times both.
+ * Then it prints the heap still in use after a full GC and the number of open files, which is what Bootstrap
+ * left behind for the life of the process. With {@code bsl.io} it also prints the I/O Bootstrap counted, in total.
+ * With {@code harness.probe} it prints the bytes {@link Util#findAutomaticModule(Path...)} allocates per jar listed
+ * in that file, measured after probing them all once so that only the probing itself is counted.
+ *
+ * Last, if {@code harness.threads} is set, it measures the runtime layer's class loaders from that many threads
+ * at once using the classes listed in {@code harness.throughput}, see {@link LoaderThroughput}.
+ */
+public class HarnessEntryPoint implements BootstrapEntryPoint {
+    public static final String ENTRY = "BSL-HARNESS-ENTRY";
+    public static final String LOADED = "BSL-HARNESS-LOADED";
+    public static final String FOOTPRINT = "BSL-HARNESS-FOOTPRINT";
+    public static final String IO = "BSL-HARNESS-IO";
+    public static final String ALLOC = "BSL-HARNESS-ALLOC";
+
+    @Override
+    public void main(String... args) {
+        System.out.println(ENTRY);
+        System.out.flush();
+
+        var list = System.getProperty("harness.classes");
+        var cl = Thread.currentThread().getContextClassLoader();
+        int count = 0;
+        if (list != null) {
+            try {
+                for (var name : read(list)) {
+                    Class.forName(name, false, cl);
+                    count++;
+                }
+            } catch (ClassNotFoundException e) {
+                throw new IllegalStateException("Failed to load synthetic class", e);
+            }
+        }
+
+        System.out.println(LOADED + ' ' + count);
+        System.out.flush();
+
+        // After the timed part, a full GC isn't something we want to measure
+        System.gc();
+        var runtime = Runtime.getRuntime();
+        System.out.println(FOOTPRINT + ' ' + (runtime.totalMemory() - runtime.freeMemory()) + ' ' + openFiles());
+        if (BootstrapIO.ENABLED) {
+            long opens = 0;
+            long bytes = 0;
+            long stats = 0;
+            for (var totals : BootstrapIO.byPhase().values()) {
+                opens += totals.opens();
+                bytes += totals.bytes();
+                stats += totals.stats();
+            }
+            System.out.println(IO + ' ' + opens + ' ' + bytes + ' ' + stats);
+        }
+        var probe = System.getProperty("harness.probe");
+        if (probe != null)
+            System.out.println(ALLOC + ' ' + allocated(read(probe).stream().map(Path::of).toList()));
+        System.out.flush();
+
+        var threads = System.getProperty("harness.threads");
+        var throughput = System.getProperty("harness.throughput");
+        if (threads != null && !threads.isBlank() && throughput != null) {
+            try {
+                LoaderThroughput.run(cl, read(throughput), threads, Long.getLong("harness.duration", 100));
+            } catch (Exception e) {
+                throw new IllegalStateException("Failed to measure class loader throughput", e);
+            }
+        }
+    }
+
+    private static List<String> read(String file) {
+        try {
+            return Files.readAllLines(Path.of(file)).stream().filter(l -> !l.isEmpty()).toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Bytes allocated per jar, or -1 if the JVM can't tell us
+    private static long allocated(List<Path> jars) {
+        if (jars.isEmpty() || !(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads) || !threads.isThreadAllocatedMemorySupported())
+            return -1;
+        threads.setThreadAllocatedMemoryEnabled(true);
+        for (var jar : jars)
+            Util.findAutomaticModule(jar);
+        long start = threads.getCurrentThreadAllocatedBytes();
+        for (var jar : jars)
+            Util.findAutomaticModule(jar);
+        return (threads.getCurrentThreadAllocatedBytes() - start) / jars.size();
+    }
+
+    // Only Linux makes this easy to find out, anywhere else it isn't measured
+    private static long openFiles() {
+        var fds = Path.of("/proc/self/fd");
+        if (!Files.isDirectory(fds))
+            return -1;
+        try (var files = Files.list(fds)) {
+            return files.count() - 1; // Not counting the one we're listing it with
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public String name() {
+        return "harness";
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.bootstrap.harness.entrypoint;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures the class loaders Bootstrap built for the runtime layer from several threads at once, after the startup
+ * numbers have been taken. For every thread count it prints the wall clock nanoseconds per operation, across all threads:
+ * <ul>
+ *   <li>{@code define}: Loading and defining classes nobody has asked for yet, every thread gets its own classes.</li>
+ *   <li>{@code lookup}: {@code getResource} for class files that exist.</li>
+ *   <li>{@code miss}: {@code getResource} for files that don't exist, in packages that do.</li>
+ *   <li>{@code fallback}: Loading classes in packages no module has, which ends up in the fallback parent.</li>
+ * </ul>
+ * Everything but {@code define} can be repeated, so they run for a fixed time after an equally long warmup.
+ */
+final class LoaderThroughput {
+    static final String THROUGHPUT = "BSL-HARNESS-THROUGHPUT";
+    private static final int CHECK = 64;
+
+    private interface Op {
+        void run(ClassLoader cl, String name) throws Exception;
+    }
+
+    private LoaderThroughput() {}
+
+    /**
+     * @param threads Thread counts, {@code n} is the number of processors
+     * @param names Classes that haven't been loaded yet, split between the thread counts for {@code define}
+     */
+    static void run(ClassLoader cl, List<String> names, String threads, long duration) throws Exception {
+        var counts = new ArrayList<Integer>();
+        for (var part : threads.split(",")) {
+            part = part.trim();
+            counts.add("n".equals(part) ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(part));
+        }
+        var keys = threads.split(",");
+
+        for (int round = 0; round < counts.size(); round++) {
+            int count = counts.get(round);
+
+            // Every round gets different classes, spread over every jar instead of the first few
+            var defines = new ArrayList<String>();
+            for (int x = round; x < names.size(); x += counts.size())
+                defines.add(names.get(x));
+
+            var resources = names.stream().map(n -> n.replace('.', '/') + ".class").toList();
+            var missing = resources.stream().map(n -> n.substring(0, n.lastIndexOf('/')) + "/Missing.txt").toList();
+            var fallback = new ArrayList<String>(names.size());
+            for (int x = 0; x < names.size(); x++)
+                fallback.add("harness.fallback.pkg" + (x % 16) + ".Missing" + x);
+
+            var define = once(cl, defines, count, (l, n) -> Class.forName(n, false, l));
+            var lookup = timed(cl, resources, count, duration, (l, n) -> {
+                if (l.getResource(n) == null)
+                    throw new IllegalStateException("Missing resource " + n);
+            });
+            var miss = timed(cl, missing, count, duration, (l, n) -> l.getResource(n));
+            var parent = timed(cl, fallback, count, duration, (l, n) -> {
+                try {
+                    l.loadClass(n);
+                } catch (ClassNotFoundException e) {
+                    // Expected, it's what we're timing
+                }
+            });
+
+            System.out.println(String.format(Locale.ROOT, "%s t%s define=%.1f lookup=%.1f miss=%.1f fallback=%.1f",
+                THROUGHPUT, keys[round].trim(), define, lookup, miss, parent));
+            System.out.flush();
+        }
+    }
+
+    // Every name exactly once, split between the threads
+    private static double once(ClassLoader cl, List<String> names, int threads, Op op) throws Exception {
+        if (names.isEmpty())
+            return 0;
+        var ops = new LongAdder();
+        long time = parallel(threads, t -> {
+            for (int x = t; x < names.size(); x += threads) {
+                op.run(cl, names.get(x));
+                ops.increment();
+            }
+        });
+        return (double)time / ops.sum();
+    }
+
+    private static double timed(ClassLoader cl, List<String> names, int threads, long duration, Op op) throws Exception {
+        if (names.isEmpty())
+            return 0;
+        loop(cl, names, threads, duration, op); // Warmup
+        var ops = loop(cl, names, threads, duration, op);
+        return (double)ops[1] / ops[0];
+    }
+
+    // @return operations, nanoseconds
+    private static long[] loop(ClassLoader cl, List<String> names, int threads, long duration, Op op) throws Exception {
+        var ops = new LongAdder();
+        var deadline = new long[1];
+        long time = parallel(threads, t -> {
+            int done = 0;
+            int x = t;
+            while (done % CHECK != 0 || System.nanoTime() < deadline[0]) {
+                op.run(cl, names.get(x));
+                x = (x + threads) % names.size();
+                done++;
+            }
+            ops.add(done);
+        }, () -> deadline[0] = System.nanoTime() + duration * 1_000_000);
+        return new long[] { ops.sum(), time };
+    }
+
+    private interface Task {
+        void run(int thread) throws Exception;
+    }
+
+    private static long parallel(int threads, Task task) throws Exception {
+        return parallel(threads, task, () -> {});
+    }
+
+    /*
+     * All threads are started first and released together, and the time is from the release to the last one finishing,
+     * so that starting threads isn't measured.
+     */
+    private static long parallel(int threads, Task task, Runnable before) throws Exception {
+        var ready = new CountDownLatch(threads);
+        var start = new CountDownLatch(1);
+        var failure = new Exception[1];
+        var workers = new ArrayList<Thread>(threads);
+        var context = Thread.currentThread().getContextClassLoader();
+        for (int x = 0; x < threads; x++) {
+            int id = x;
+            var thread = new Thread(() -> {
+                ready.countDown();
+                try {
+                    start.await();
+                    task.run(id);
+                } catch (Exception e) {
+                    synchronized (failure) {
+                        failure[0] = e;
+                    }
+                }
+            }, "Harness-Throughput-" + x);
+            thread.setContextClassLoader(context);
+            workers.add(thread);
+            thread.start();
+        }
+
+        ready.await();
+        before.run();
+        long begin = System.nanoTime();
+        start.countDown();
+        for (var thread : workers)
+            thread.join();
+        long time = System.nanoTime() - begin;
+
+        synchronized (failure) {
+            if (failure[0] != null)
+                throw failure[0];
+        }
+        return time;
+    }
+}
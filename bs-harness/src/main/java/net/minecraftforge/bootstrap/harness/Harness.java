@@ -0,0 +1,452 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.bootstrap.harness;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End to end startup benchmark. Builds a synthetic {@link Installation}, launches it in fresh JVMs through both
+ * the shim and {@code ForgeBootstrap.main} directly, and records how long it takes to reach the entry point and
+ * to finish loading every synthetic class. The {@code pack} mode launches the shim from a library pack instead of
+ * {@code libraries/}.
+ *
+ * Cold runs start with an empty {@code bsl.cache}, warm runs reuse the one left by the previous run. Neither can
+ * drop the OS file cache, so cold is only cold as far as Bootstrap is concerned.
+ *
+ * The heap still in use once the entry point has run, and the number of files left open, are recorded too.
+ * They show what Bootstrap keeps alive for the life of the process, and can be held to a fixed budget.
+ *
+ * With {@code --io}, launches count their I/O with {@code bsl.io}, and the files opened, bytes read and stat calls
+ * across the whole boot are recorded. Opens can be held to a budget per classpath entry, which is what catches a jar
+ * being opened again by some new code path.
+ *
+ * With {@code --alloc}, every launch also measures the KiB that probing one synthetic jar with
+ * {@code Util.findAutomaticModule} allocates. It can be held to a budget, like the footprint.
+ *
+ * With {@code --threads}, every launch then measures the runtime layer's class loaders from that many threads at once,
+ * in nanoseconds per operation. Lower is better for everything recorded, so they're compared like the times.
+ *
+ * Results are written to {@code results.properties} and compared against a baseline in the same format, any
+ * statistic that is worse than the baseline by more than its threshold fails the run.
+ *
+ * Inputs from the build are passed as system properties:
+ * <ul>
+ *   <li>{@code harness.bootstrap}: Bootstrap and its runtime dependencies, as a path list</li>
+ *   <li>{@code harness.shim}: The bs-shim jar</li>
+ *   <li>{@code harness.entrypoint}: The harness entry point jar</li>
+ *   <li>{@code harness.baseline}: Default baseline file</li>
+ * </ul>
+ */
+public class Harness {
+    private static final String[] STATS = { "min", "p50", "p90", "p99", "max" };
+    private static final long TIMEOUT = TimeUnit.MINUTES.toNanos(5);
+
+    private record Sample(double entry, double loaded, double heap, long files, double alloc, Map<String, Double> io, Map<String, Double> throughput) {}
+
+    public static void main(String[] args) throws Exception {
+        var options = Options.parse(args);
+        var bootstrap = Arrays.stream(required("harness.bootstrap").split(File.pathSeparator)).map(Path::of).toList();
+        var spec = new Installation.Spec(options.libraries, options.mods, options.packages, options.classes, !options.threads.isEmpty());
+
+        log("Generating installation: " + spec);
+        var install = Installation.create(options.output.resolve("install"), spec, bootstrap,
+            Path.of(required("harness.shim")), Path.of(required("harness.entrypoint")));
+
+        if (options.modes.contains("pack"))
+            pack(install);
+
+        var results = new TreeMap<String, Double>();
+        for (var mode : options.modes) {
+            for (var kind : List.of("cold", "warm")) {
+                var prefix = mode + '.' + kind;
+                log("Running " + prefix + ": " + options.warmup + " warmup, " + options.runs + " measured");
+                for (int x = 0; x < options.warmup; x++)
+                    launch(install, options, mode, kind);
+
+                var samples = new ArrayList<Sample>(options.runs);
+                for (int x = 0; x < options.runs; x++)
+                    samples.add(launch(install, options, mode, kind));
+
+                record(results, prefix + ".entry", samples.stream().mapToDouble(Sample::entry).toArray());
+                record(results, prefix + ".loaded", samples.stream().mapToDouble(Sample::loaded).toArray());
+                record(results, prefix + ".heap", samples.stream().mapToDouble(Sample::heap).toArray());
+                if (samples.stream().allMatch(s -> s.files() >= 0))
+                    record(results, prefix + ".files", samples.stream().mapToDouble(Sample::files).toArray());
+                if (options.alloc)
+                    record(results, prefix + ".alloc", samples.stream().mapToDouble(Sample::alloc).toArray());
+                for (var key : samples.get(0).io().keySet())
+                    record(results, prefix + ".io." + key, samples.stream().mapToDouble(s -> s.io().get(key)).toArray());
+                for (var key : samples.get(0).throughput().keySet())
+                    record(results, prefix + ".throughput." + key, samples.stream().mapToDouble(s -> s.throughput().get(key)).toArray());
+            }
+        }
+
+        write(options.output.resolve("results.properties"), results, "Startup times in milliseconds, heap in MB, open files, probe allocation in KiB per jar, I/O counts, and loader throughput in ns per operation for " + spec);
+
+        var baseline = read(options.baseline);
+        if (options.updateBaseline) {
+            write(options.baseline, results, "Startup baseline in milliseconds, heap in MB, open files, probe allocation in KiB per jar, I/O counts, and loader throughput in ns per operation for " + spec);
+            log("Updated baseline: " + options.baseline);
+        }
+
+        var passed = compare(results, baseline, options);
+        passed &= budget(results, options, install.classpath.size());
+        if (!passed && !options.updateBaseline)
+            System.exit(1);
+    }
+
+    private static String required(String property) {
+        var ret = System.getProperty(property);
+        if (ret == null || ret.isBlank())
+            throw new IllegalStateException("Missing required system property " + property + ", run this through the benchmark task");
+        return ret;
+    }
+
+    private static void log(String message) {
+        System.out.println(message);
+    }
+
+    /* ======================================================================
+     *                               Launching
+     * ======================================================================
+     */
+
+    private static Sample launch(Installation install, Options options, String mode, String kind) throws IOException, InterruptedException {
+        if ("cold".equals(kind))
+            delete(install.cache);
+
+        var java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        var cmd = new ArrayList<String>();
+        cmd.add(java);
+        cmd.add("-Dbsl.cache=" + install.cache);
+        cmd.add("-Dharness.classes=" + install.classes);
+        if (options.io)
+            cmd.add("-Dbsl.io=true");
+        if (options.alloc)
+            cmd.add("-Dharness.probe=" + install.probe);
+        if (!options.threads.isEmpty()) {
+            cmd.add("-Dharness.throughput=" + install.throughput);
+            cmd.add("-Dharness.threads=" + String.join(",", options.threads));
+            cmd.add("-Dharness.duration=" + options.duration);
+        }
+        cmd.addAll(options.jvmArgs);
+        if ("shim".equals(mode) || "pack".equals(mode)) {
+            // The shim prefers the pack whenever it exists
+            if ("shim".equals(mode))
+                cmd.add("-Dbss.pack=false");
+            cmd.add("-cp");
+            cmd.add(install.shim.toString());
+            cmd.add("net.minecraftforge.bootstrap.shim.Main");
+        } else {
+            cmd.add("-cp");
+            cmd.add(String.join(File.pathSeparator, install.classpath.stream().map(Path::toString).toList()));
+            cmd.add(Installation.MAIN_CLASS);
+        }
+
+        long start = System.nanoTime();
+        var process = new ProcessBuilder(cmd)
+            .directory(install.root.toFile())
+            .redirectErrorStream(true)
+            .start();
+        long entry = -1;
+        long loaded = -1;
+        long heap = -1;
+        long files = -1;
+        long alloc = -2; // -1 is the entry point saying it couldn't measure it
+        var io = new TreeMap<String, Double>();
+        var throughput = new TreeMap<String, Double>();
+
+        // Keep the tail of the output so failures can be diagnosed
+        var tail = new ArrayDeque<String>();
+        try (var reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                long now = System.nanoTime();
+                if (line.startsWith("BSL-HARNESS-ENTRY"))
+                    entry = now;
+                else if (line.startsWith("BSL-HARNESS-LOADED"))
+                    loaded = now;
+                else if (line.startsWith("BSL-HARNESS-FOOTPRINT")) {
+                    var pts = line.split(" ");
+                    heap = Long.parseLong(pts[1]);
+                    files = Long.parseLong(pts[2]);
+                } else if (line.startsWith("BSL-HARNESS-ALLOC")) {
+                    alloc = Long.parseLong(line.split(" ")[1]);
+                } else if (line.startsWith("BSL-HARNESS-IO")) {
+                    var pts = line.split(" ");
+                    io.put("opens", Double.parseDouble(pts[1]));
+                    io.put("bytes", Double.parseDouble(pts[2]));
+                    io.put("stats", Double.parseDouble(pts[3]));
+                } else if (line.startsWith("BSL-HARNESS-THROUGHPUT")) {
+                    // BSL-HARNESS-THROUGHPUT t<threads> <op>=<ns> ...
+                    var pts = line.split(" ");
+                    for (int x = 2; x < pts.length; x++) {
+                        int idx = pts[x].indexOf('=');
+                        throughput.put(pts[1] + '.' + pts[x].substring(0, idx), Double.parseDouble(pts[x].substring(idx + 1)));
+                    }
+                }
+
+                tail.addLast(line);
+                if (tail.size() > 50)
+                    tail.removeFirst();
+                if (now - start > TIMEOUT)
+                    break;
+            }
+        }
+
+        if (!process.waitFor(Math.max(0, TIMEOUT - (System.nanoTime() - start)), TimeUnit.NANOSECONDS))
+            process.destroyForcibly().waitFor();
+
+        if (process.exitValue() != 0 || entry == -1 || loaded == -1 || heap == -1 || (alloc == -2) == options.alloc || io.isEmpty() == options.io || throughput.size() != options.threads.size() * 4) {
+            tail.forEach(l -> System.out.println("    " + l));
+            throw new IllegalStateException("Launch failed (" + mode + '.' + kind + ", exit code " + process.exitValue() + "): " + String.join(" ", cmd));
+        }
+        // A budget that silently measures nothing would always pass
+        if (alloc == -1)
+            throw new IllegalStateException("--alloc was given, but " + java + " can not measure thread allocation (" + mode + '.' + kind + ')');
+
+        return new Sample((entry - start) / 1_000_000D, (loaded - start) / 1_000_000D, heap / (1024D * 1024D), files, alloc / 1024D, io, throughput);
+    }
+
+    private static void pack(Installation install) throws IOException, InterruptedException {
+        log("Packing libraries");
+        var java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        var process = new ProcessBuilder(java, "-cp", install.shim.toString(), "net.minecraftforge.bootstrap.shim.Main", "--pack")
+            .directory(install.root.toFile())
+            .inheritIO()
+            .start();
+        if (process.waitFor() != 0)
+            throw new IllegalStateException("Failed to pack libraries, exit code " + process.exitValue());
+    }
+
+    private static void delete(Path root) throws IOException {
+        if (!Files.exists(root))
+            return;
+        try (var walk = Files.walk(root)) {
+            for (var path : walk.sorted(Comparator.reverseOrder()).toList())
+                Files.delete(path);
+        }
+    }
+
+    /* ======================================================================
+     *                               Statistics
+     * ======================================================================
+     */
+
+    private static void record(Map<String, Double> results, String prefix, double[] values) {
+        Arrays.sort(values);
+        results.put(prefix + ".min", values[0]);
+        results.put(prefix + ".p50", percentile(values, 50));
+        results.put(prefix + ".p90", percentile(values, 90));
+        results.put(prefix + ".p99", percentile(values, 99));
+        results.put(prefix + ".max", values[values.length - 1]);
+    }
+
+    // Nearest rank, values must be sorted
+    private static double percentile(double[] values, int percentile) {
+        int rank = (int)Math.ceil(percentile / 100D * values.length);
+        return values[Math.max(0, Math.min(values.length, rank) - 1)];
+    }
+
+    private static boolean compare(Map<String, Double> results, Map<String, Double> baseline, Options options) {
+        if (baseline.isEmpty()) {
+            log(options.baseline == null ? "No baseline, only checking budgets" : "No baseline found at " + options.baseline + ", nothing to compare against");
+            results.forEach((key, value) -> log(String.format(Locale.ROOT, "  %-40s %10.1f", key, value)));
+            return true;
+        }
+
+        boolean ret = true;
+        log(String.format(Locale.ROOT, "  %-40s %10s %10s %8s %8s", "", "baseline", "current", "change", "limit"));
+        for (var entry : results.entrySet()) {
+            var key = entry.getKey();
+            var current = entry.getValue();
+            var base = baseline.get(key);
+            if (base == null) {
+                log(String.format(Locale.ROOT, "  %-40s %10s %10.1f", key, "-", current));
+                continue;
+            }
+
+            var stat = key.substring(key.lastIndexOf('.') + 1);
+            var limit = options.thresholds.getOrDefault(stat, options.threshold);
+            var change = base == 0 ? 0 : (current - base) / base * 100;
+            var failed = change > limit;
+            ret &= !failed;
+            log(String.format(Locale.ROOT, "  %-40s %10.1f %10.1f %+7.1f%% %7.1f%%%s", key, base, current, change, limit, failed ? "  REGRESSION" : ""));
+        }
+        return ret;
+    }
+
+    // Unlike the baseline these are absolute, the worst launch of every mode has to fit
+    private static boolean budget(Map<String, Double> results, Options options, int entries) {
+        boolean ret = true;
+        for (var entry : results.entrySet()) {
+            var key = entry.getKey();
+            if (!key.endsWith(".max"))
+                continue;
+            Double limit = null;
+            if (key.endsWith(".heap.max"))
+                limit = options.maxHeap;
+            else if (key.endsWith(".files.max"))
+                limit = options.maxFiles;
+            else if (key.endsWith(".alloc.max"))
+                limit = options.maxAlloc;
+            else if (key.endsWith(".io.opens.max") && options.maxOpens != null)
+                limit = options.maxOpens * entries;
+            if (limit != null && entry.getValue() > limit) {
+                log(String.format(Locale.ROOT, "  %-40s %10.1f over budget of %.1f", key, entry.getValue(), limit));
+                ret = false;
+            }
+        }
+        return ret;
+    }
+
+    /* ======================================================================
+     *                               Files
+     * ======================================================================
+     */
+
+    private static Map<String, Double> read(Path path) throws IOException {
+        var ret = new HashMap<String, Double>();
+        if (path == null || !Files.exists(path))
+            return ret;
+
+        var props = new Properties();
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            props.load(reader);
+        }
+        for (var key : props.stringPropertyNames())
+            ret.put(key, Double.parseDouble(props.getProperty(key)));
+        return ret;
+    }
+
+    private static void write(Path path, Map<String, Double> values, String comment) throws IOException {
+        var parent = path.toAbsolutePath().getParent();
+        if (parent != null)
+            Files.createDirectories(parent);
+
+        // Properties.store doesn't sort, and we want stable diffs for the checked in baseline
+        try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            writer.write("# " + comment + '\n');
+            for (var entry : values.entrySet())
+                writer.write(entry.getKey() + '=' + String.format(Locale.ROOT, "%.1f", entry.getValue()) + '\n');
+        }
+    }
+
+    /* ======================================================================
+     *                               Options
+     * ======================================================================
+     */
+
+    private static final class Options {
+        int libraries = 100;
+        int mods = 50;
+        int packages = 4;
+        int classes = 10;
+        int runs = 10;
+        int warmup = 2;
+        List<String> modes = List.of("shim", "direct");
+        List<String> jvmArgs = new ArrayList<>();
+        Path output = Path.of("").toAbsolutePath();
+        Path baseline;
+        boolean updateBaseline = false;
+        double threshold = 10;
+        Map<String, Double> thresholds = new HashMap<>();
+        Double maxHeap;
+        Double maxFiles;
+        boolean io = false;
+        Double maxOpens;
+        boolean alloc = false;
+        Double maxAlloc;
+        List<String> threads = List.of();
+        long duration = 100;
+
+        static Options parse(String[] args) {
+            var ret = new Options();
+            var baseline = System.getProperty("harness.baseline");
+            ret.baseline = baseline == null ? null : Path.of(baseline);
+
+            for (int x = 0; x < args.length; x++) {
+                var arg = args[x];
+                switch (arg) {
+                    case "--libraries" -> ret.libraries = Integer.parseInt(value(args, ++x, arg));
+                    case "--mods" -> ret.mods = Integer.parseInt(value(args, ++x, arg));
+                    case "--packages" -> ret.packages = Integer.parseInt(value(args, ++x, arg));
+                    case "--classes" -> ret.classes = Integer.parseInt(value(args, ++x, arg));
+                    case "--runs" -> ret.runs = Integer.parseInt(value(args, ++x, arg));
+                    case "--warmup" -> ret.warmup = Integer.parseInt(value(args, ++x, arg));
+                    case "--mode" -> ret.modes = List.of(value(args, ++x, arg).split(","));
+                    case "--jvm-arg" -> ret.jvmArgs.add(value(args, ++x, arg));
+                    case "--output" -> ret.output = Path.of(value(args, ++x, arg)).toAbsolutePath();
+                    case "--baseline" -> ret.baseline = Path.of(value(args, ++x, arg));
+                    case "--no-baseline" -> ret.baseline = null;
+                    case "--update-baseline" -> ret.updateBaseline = true;
+                    case "--max-heap" -> ret.maxHeap = Double.parseDouble(value(args, ++x, arg));
+                    case "--max-files" -> ret.maxFiles = Double.parseDouble(value(args, ++x, arg));
+                    case "--io" -> ret.io = true;
+                    case "--max-opens" -> ret.maxOpens = Double.parseDouble(value(args, ++x, arg));
+                    case "--alloc" -> ret.alloc = true;
+                    case "--max-alloc" -> ret.maxAlloc = Double.parseDouble(value(args, ++x, arg));
+                    case "--threads" -> ret.threads = List.of(value(args, ++x, arg).split(","));
+                    case "--duration" -> ret.duration = Long.parseLong(value(args, ++x, arg));
+                    case "--threshold" -> {
+                        // Either a percentage for everything, or stat=percentage
+                        var value = value(args, ++x, arg);
+                        int idx = value.indexOf('=');
+                        if (idx == -1)
+                            ret.threshold = Double.parseDouble(value);
+                        else
+                            ret.thresholds.put(value.substring(0, idx), Double.parseDouble(value.substring(idx + 1)));
+                    }
+                    default -> throw new IllegalArgumentException("Unknown argument: " + arg);
+                }
+            }
+
+            if (ret.runs < 1)
+                throw new IllegalArgumentException("--runs must be at least 1");
+            if (ret.maxOpens != null && !ret.io)
+                throw new IllegalArgumentException("--max-opens needs --io");
+            if (ret.maxAlloc != null && !ret.alloc)
+                throw new IllegalArgumentException("--max-alloc needs --alloc");
+            for (var mode : ret.modes) {
+                if (!"shim".equals(mode) && !"direct".equals(mode) && !"pack".equals(mode))
+                    throw new IllegalArgumentException("Unknown mode " + mode + ", expected shim, direct, or pack");
+            }
+            for (var threads : ret.threads) {
+                if (!"n".equals(threads) && !threads.matches("[1-9][0-9]*"))
+                    throw new IllegalArgumentException("Unknown thread count " + threads + ", expected a number or n");
+            }
+            for (var stat : ret.thresholds.keySet()) {
+                if (!Arrays.asList(STATS).contains(stat))
+                    throw new IllegalArgumentException("Unknown threshold " + stat + ", expected one of " + String.join(", ", STATS));
+            }
+            return ret;
+        }
+
+        private static String value(String[] args, int idx, String arg) {
+            if (idx >= args.length)
+                throw new IllegalArgumentException("Missing value for " + arg);
+            return args[idx];
+        }
+    }
+}
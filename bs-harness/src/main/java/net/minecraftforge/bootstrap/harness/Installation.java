@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.bootstrap.harness;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+/**
+ * A synthetic installation, laid out the same way the Forge installer does it:
+ * <pre>
+ *   bootstrap-shim.properties
+ *   bootstrap-shim.list        sha256, id, and path of every library, in classpath order
+ *   libraries/                 Bootstrap, its dependencies, the entry point, synthetic libraries, and synthetic mods
+ *   classes.list               Every synthetic library class, for the entry point to load
+ *   throughput.list            Extra library classes that aren't loaded at startup, for measuring the loaders after it
+ *   probe.list                 Every synthetic library and mod jar, for measuring what probing them allocates
+ * </pre>
+ * The mods are on the classpath like they are in dev, Bootstrap has to open and probe them to know to leave them
+ * for FML, which is part of what we want to measure.
+ *
+ * The synthetic jars are automatic modules made of empty classes, enough to make Bootstrap scan,
+ * index and define them without needing anything else on the classpath. The extra classes for
+ * {@code throughput.list} are only written when asked for, they make the jars bigger.
+ */
+final class Installation {
+    static final String MAIN_CLASS = "net.minecraftforge.bootstrap.ForgeBootstrap";
+
+    record Spec(int libraries, int mods, int packages, int classes, boolean throughput) {}
+
+    final Path root;
+    final Path libraries;
+    final Path shim;
+    final Path cache;
+    final Path classes;
+    final Path throughput;
+    final Path probe;
+    final List<Path> classpath = new ArrayList<>();
+
+    private Installation(Path root, Path shim) {
+        this.root = root;
+        this.libraries = root.resolve("libraries");
+        this.shim = shim;
+        this.cache = root.resolve("cache");
+        this.classes = root.resolve("classes.list");
+        this.throughput = root.resolve("throughput.list");
+        this.probe = root.resolve("probe.list");
+    }
+
+    static Installation create(Path root, Spec spec, List<Path> bootstrap, Path shim, Path entrypoint) throws IOException {
+        if (Files.exists(root)) {
+            try (var walk = Files.walk(root)) {
+                for (var path : walk.sorted(Comparator.reverseOrder()).toList())
+                    Files.delete(path);
+            }
+        }
+        Files.createDirectories(root);
+
+        var ret = new Installation(root.toAbsolutePath(), shim.toAbsolutePath());
+        var list = new StringBuilder();
+        var names = new ArrayList<String>();
+        var extra = new ArrayList<String>();
+        var probe = new ArrayList<String>();
+
+        for (var lib : bootstrap)
+            ret.library(list, "bootstrap", lib);
+        ret.library(list, "harness", entrypoint);
+
+        for (int x = 0; x < spec.libraries; x++) {
+            var name = "synthetic.lib" + x;
+            var jar = ret.libraries.resolve("synthetic/lib" + x + "/1.0/lib" + x + "-1.0.jar");
+            writeJar(jar, name, spec, false, names, extra);
+            ret.entry(list, "synthetic:lib" + x + ":1.0", jar);
+            probe.add(jar.toString());
+        }
+
+        for (int x = 0; x < spec.mods; x++) {
+            var jar = ret.libraries.resolve("synthetic/mod" + x + "/1.0/mod" + x + "-1.0.jar");
+            writeJar(jar, "synthetic.mod" + x, spec, true, null, null);
+            ret.entry(list, "synthetic:mod" + x + ":1.0", jar);
+            probe.add(jar.toString());
+        }
+
+        Files.writeString(root.resolve("bootstrap-shim.list"), list.toString(), StandardCharsets.UTF_8);
+        Files.writeString(root.resolve("bootstrap-shim.properties"),
+            "Main-Class=" + MAIN_CLASS + '\n' +
+            "Java-Version=" + Runtime.version().feature() + '\n' +
+            "Bootstrap-Libraries=bootstrap\n" +
+            "Bootstrap-Modifiers=\n", StandardCharsets.UTF_8);
+        Files.write(ret.classes, names, StandardCharsets.UTF_8);
+        Files.write(ret.throughput, extra, StandardCharsets.UTF_8);
+        Files.write(ret.probe, probe, StandardCharsets.UTF_8);
+        return ret;
+    }
+
+    private void library(StringBuilder list, String group, Path source) throws IOException {
+        var name = source.getFileName().toString();
+        var target = libraries.resolve(group).resolve(name);
+        Files.createDirectories(target.getParent());
+        Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+        entry(list, group + ':' + name, target);
+    }
+
+    private void entry(StringBuilder list, String id, Path jar) throws IOException {
+        classpath.add(jar);
+        var path = libraries.relativize(jar).toString().replace('\\', '/');
+        list.append(sha256(jar)).append('\t').append(id).append('\t').append(path).append('\n');
+    }
+
+    private static void writeJar(Path path, String module, Spec spec, boolean mod, List<String> names, List<String> extra) throws IOException {
+        Files.createDirectories(path.getParent());
+        var manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(new Attributes.Name("Automatic-Module-Name"), module);
+
+        try (var out = new JarOutputStream(Files.newOutputStream(path), manifest)) {
+            if (mod) {
+                out.putNextEntry(new JarEntry("META-INF/mods.toml"));
+                out.write(("modLoader=\"javafml\"\n[[mods]]\nmodId=\"" + module.replace('.', '_') + "\"\n").getBytes(StandardCharsets.UTF_8));
+                out.closeEntry();
+            }
+
+            var base = module.replace('.', '/');
+            for (int p = 0; p < spec.packages; p++) {
+                for (int c = 0; c < spec.classes; c++) {
+                    var name = base + "/pkg" + p + "/Class" + c;
+                    out.putNextEntry(new JarEntry(name + ".class"));
+                    out.write(emptyClass(name));
+                    out.closeEntry();
+                    if (names != null)
+                        names.add(name.replace('/', '.'));
+                }
+                for (int c = 0; spec.throughput && extra != null && c < spec.classes; c++) {
+                    var name = base + "/pkg" + p + "/Extra" + c;
+                    out.putNextEntry(new JarEntry(name + ".class"));
+                    out.write(emptyClass(name));
+                    out.closeEntry();
+                    extra.add(name.replace('/', '.'));
+                }
+            }
+        }
+    }
+
+    // public class <name> extends Object {}, the smallest thing the JVM will define
+    private static byte[] emptyClass(String name) throws IOException {
+        var bytes = new ByteArrayOutputStream();
+        var out = new DataOutputStream(bytes);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);   // Minor
+        out.writeShort(52);  // Major, Java 8
+        out.writeShort(5);   // Constant pool count, plus one
+        out.writeByte(7);    // #1 Class
+        out.writeShort(2);
+        out.writeByte(1);    // #2 Utf8
+        out.writeUTF(name);
+        out.writeByte(7);    // #3 Class
+        out.writeShort(4);
+        out.writeByte(1);    // #4 Utf8
+        out.writeUTF("java/lang/Object");
+        out.writeShort(0x0021); // ACC_PUBLIC | ACC_SUPER
+        out.writeShort(1);   // This
+        out.writeShort(3);   // Super
+        out.writeShort(0);   // Interfaces
+        out.writeShort(0);   // Fields
+        out.writeShort(0);   // Methods
+        out.writeShort(0);   // Attributes
+        return bytes.toByteArray();
+    }
+
+    private static String sha256(Path path) throws IOException {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(path));
+            var ret = new StringBuilder(64);
+            for (var b : digest)
+                ret.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            return ret.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
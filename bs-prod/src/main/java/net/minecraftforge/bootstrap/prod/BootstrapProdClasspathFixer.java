@@ -9,22 +9,25 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import net.minecraftforge.bootstrap.api.BootstrapClasspathModifier;
+import net.minecraftforge.bootstrap.api.BootstrapIO;
+import net.minecraftforge.bootstrap.api.BootstrapLog;
 import net.minecraftforge.bootstrap.api.Util;
 
 public class BootstrapProdClasspathFixer implements BootstrapClasspathModifier {
-    private static final boolean DEBUG    = Boolean.parseBoolean(System.getProperty("bsl.debug",        "false"));
+    private static final boolean DEBUG    = BootstrapLog.enabled(BootstrapLog.Level.DEBUG);
     private static final boolean IGNORE   = Boolean.parseBoolean(System.getProperty("bsl.dev.ignore",   "true" ));
     private static final String  IGNORE_FILE = "META-INF/forge-bootstrap-ignore";
+    // Files inside exploded directories that we, or Util.findModule, read
+    private static final String[] DIRECTORY_FILES = { IGNORE_FILE, "module-info.class", "META-INF/MANIFEST.MF", "META-INF/versions" };
 
     static void log(String message) {
-        System.out.println(message);
+        BootstrapLog.debug(message);
     }
 
     @Override
@@ -42,6 +45,35 @@ public class BootstrapProdClasspathFixer implements BootstrapClasspathModifier {
         return ret;
     }
 
+    @Override
+    public String fingerprint(List<Path[]> classpath) {
+        var ret = new StringBuilder();
+        ret.append("ignore=").append(IGNORE);
+
+        // Bootstrap tracks the jar files themselves, but not the contents of directories
+        if (IGNORE) {
+            for (var paths : classpath) {
+                for (var path : paths) {
+                    if (!BootstrapIO.isDirectory(path))
+                        continue;
+                    for (var name : DIRECTORY_FILES)
+                        ret.append(';').append(stamp(path.resolve(name)));
+                }
+            }
+        }
+
+        return ret.toString();
+    }
+
+    private static String stamp(Path path) {
+        BootstrapIO.stat(path);
+        try {
+            return Files.getLastModifiedTime(path).toMillis() + ":" + Files.size(path);
+        } catch (IOException e) {
+            return "missing";
+        }
+    }
+
     /* A system to tell us to ignore certain modules completely.
      * This is used by ForgeDev tests because we essentially have our own locator for those.
      * We filter out mod files so *most* things should be fine. ForgeDev Tests are just weird.
@@ -53,24 +85,24 @@ public class BootstrapProdClasspathFixer implements BootstrapClasspathModifier {
             for (var path : paths) {
                 byte[] data = null;
 
-                if (Files.isDirectory(path)) {
+                if (BootstrapIO.isDirectory(path)) {
                     var ignore = path.resolve(IGNORE_FILE);
-                    if (Files.exists(ignore)) {
+                    if (BootstrapIO.exists(ignore)) {
                         if (DEBUG) log("Ingore File: " + ignore);
                         try {
-                            data = Files.readAllBytes(ignore);
+                            data = BootstrapIO.readAllBytes(ignore);
                         } catch (IOException e) {
                             sneak(e);
                         }
                     }
                 } else {
-                    try (var fs = FileSystems.newFileSystem(path)) {
+                    try (var fs = BootstrapIO.newFileSystem(path)) {
                         var root = fs.getRootDirectories().iterator().next();
                         var ignore = root.resolve(IGNORE_FILE);
 
-                        if (Files.exists(ignore)) {
+                        if (BootstrapIO.exists(ignore)) {
                             if (DEBUG) log("Ingore File: " + path + "!/" + ignore);
-                            data = Files.readAllBytes(ignore);
+                            data = BootstrapIO.readAllBytes(ignore);
                         }
                     } catch (IOException e) {
                         sneak(e);
@@ -106,9 +138,9 @@ public class BootstrapProdClasspathFixer implements BootstrapClasspathModifier {
             if (ignoreSelf) {
                 var module = Util.findModule(paths);
                 if (module == null) {
-                    log("\tInvalid Ignore File, could not find module name:");
+                    BootstrapLog.warn("\tInvalid Ignore File, could not find module name:");
                     for (var path : paths)
-                        log("\t\t" + path);
+                        BootstrapLog.warn("\t\t" + path);
                 } else {
                     toIgnore.add(module.name());
                 }
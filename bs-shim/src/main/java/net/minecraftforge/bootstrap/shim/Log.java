@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.bootstrap.shim;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * The shim's output, collected and written in one go instead of a println for every library. We run before
+ * Bootstrap's logging exists, so this follows the same properties instead: {@code bss.debug}, {@code bsl.debug}, or a
+ * {@code bsl.log.level} of debug or trace turn on debug output, and {@code bsl.log.file} appends it to a file.
+ * It is written right before the main class runs, or when the shim fails.
+ */
+final class Log {
+    static final boolean DEBUG = debug();
+    private static final StringBuilder BUFFER = new StringBuilder();
+
+    private Log() {}
+
+    private static boolean debug() {
+        String level = System.getProperty("bsl.log.level");
+        level = level == null ? "" : level.trim().toLowerCase(Locale.ROOT);
+        // Same as BootstrapLog, anything that isn't a level is ignored
+        switch (level) {
+            case "debug":
+            case "trace":
+                return true;
+            case "error":
+            case "warn":
+            case "info":
+                return false;
+            default:
+                return Boolean.getBoolean("bss.debug") || Boolean.getBoolean("bsl.debug");
+        }
+    }
+
+    static synchronized void log(String message) {
+        BUFFER.append(message).append(System.lineSeparator());
+    }
+
+    static synchronized void flush() {
+        if (BUFFER.length() == 0)
+            return;
+
+        String file = System.getProperty("bsl.log.file");
+        if (file != null && !file.trim().isEmpty()) {
+            try (Writer out = new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8)) {
+                out.write(BUFFER.toString());
+                BUFFER.setLength(0);
+                return;
+            } catch (IOException e) {
+                System.out.println("Failed to write log file " + file + ": " + e);
+            }
+        }
+        System.out.print(BUFFER);
+        System.out.flush();
+        BUFFER.setLength(0);
+    }
+}
@@ -11,16 +11,28 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Properties;
 
 public class Main {
-    private static final boolean DEBUG = Boolean.getBoolean("bss.debug");
+    private static final boolean DEBUG = Log.DEBUG;
     public static void main(String[] args) throws Exception {
+        try {
+            launch(args);
+        } catch (Throwable t) {
+            Log.flush();
+            throw t;
+        }
+    }
+
+    private static void launch(String[] args) throws Exception {
         Properties props = new Properties();
         try (InputStream stream = getStream("bootstrap-shim.properties")) {
             props.load(stream);
@@ -34,35 +46,74 @@ public class Main {
         if (args.length > 0 && args[0].equals("--onlyCheckJava"))
             System.exit(0);
 
+        if (args.length > 0 && args[0].equals("--pack")) {
+            File output = new File(args.length > 1 ? args[1] : Pack.FILE);
+            List<String> names = new ArrayList<>();
+            for (ListEntry entry : readList()) {
+                if (!new File("libraries/" + entry.path).exists())
+                    throw new IllegalStateException("Missing required library: " + entry.path);
+                names.add(entry.path);
+            }
+            Pack.write(output, new File("libraries"), names);
+            System.out.println("Packed " + names.size() + " libraries into " + output);
+            System.exit(0);
+        }
+
+        // The pack is used if it exists, unless bss.pack points somewhere else or is set to false
+        String packPath = System.getProperty("bss.pack", Pack.FILE);
+        File packFile = "false".equals(packPath) ? null : new File(packPath);
+        Pack pack = packFile != null && packFile.exists() ? Pack.open(packFile) : null;
+
+        List<ListEntry> entries = readList();
+        // The libraries the shim needs to load itself, when the main class takes the classpath from us
+        List<String> own = split(props.getProperty("Bootstrap-Libraries"));
+        // Bootstrap looks for classpath modifiers in our class loader, so without a list of them they could be in any library
+        if (!own.isEmpty() && props.getProperty("Bootstrap-Modifiers") == null && System.getProperty("bsl.modifiers") == null) {
+            Log.log("Ignoring Bootstrap-Libraries, it needs Bootstrap-Modifiers or bsl.modifiers to be set");
+            own = Collections.emptyList();
+        }
+
         boolean failed = false;
         List<URL> urls = new ArrayList<>();
+        List<URL> ownUrls = new ArrayList<>();
+        List<String> ownNames = new ArrayList<>();
+        // Libraries left out of our class loader by Bootstrap-Libraries, Bootstrap still gets them
+        List<String> dropped = new ArrayList<>();
+        List<Path> handoff = getClassPath();
         StringBuilder classpath = new StringBuilder(System.getProperty("java.class.path"));
 
-        try (
-            InputStream stream = getStream("bootstrap-shim.list");
-            BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))
-        ) {
+        if (pack != null) {
+            if (DEBUG)
+                Log.log("Loading classpath from " + pack.getFile());
+            List<String> names = new ArrayList<>();
+            for (ListEntry entry : entries) {
+                names.add(entry.path);
+                if (entry.matches(own))
+                    ownNames.add(entry.path);
+                else
+                    dropped.add(entry.path);
+            }
+            if (!names.equals(pack.getNames()))
+                throw new IllegalStateException("Library pack " + pack.getFile() + " does not match bootstrap-shim.list, rebuild it with --pack");
+        } else {
             if (DEBUG)
-                System.out.println("Loading classpath: ");
-            String line = reader.readLine();
-            while (line != null) {
-                String entryPath = ListEntry.getPathFrom(line);
-//                if (DEBUG) {
-//                    ListEntry entry = ListEntry.from(line);
-//                    entryPath = entry.path;
-//                    System.out.println(entry);
-//                }
-                File target = new File("libraries/"+ entryPath);
+                Log.log("Loading classpath: ");
+            for (ListEntry entry : entries) {
+                File target = new File("libraries/" + entry.path).getAbsoluteFile();
                 if (!target.exists()) {
-                    System.out.println("Missing required library: " + entryPath);
+                    Log.log("Missing required library: " + entry.path);
                     failed = true;
                 }
-                classpath.append(File.pathSeparator).append(target.getAbsolutePath());
+                classpath.append(File.pathSeparator).append(target.getPath());
                 URL url = target.toURI().toURL();
                 if (DEBUG)
-                    System.out.println(url);
+                    Log.log(url.toString());
                 urls.add(url);
-                line = reader.readLine();
+                handoff.add(target.toPath());
+                if (entry.matches(own))
+                    ownUrls.add(url);
+                else
+                    dropped.add(entry.path);
             }
         }
 
@@ -74,12 +125,12 @@ public class Main {
             throw new IllegalStateException("Could not find \"Main-Class\" in \"server-shim.properties\"");
 
         if (DEBUG)
-            System.out.println("Detected Main Class: " + mainClass);
+            Log.log("Detected Main Class: " + mainClass);
 
         String extraArgs = props.getProperty("Arguments");
         if (extraArgs != null) {
             if (DEBUG)
-                System.out.println("Detected extra arguments: " + extraArgs);
+                Log.log("Detected extra arguments: " + extraArgs);
 
             String[] pts = extraArgs.split(" ");
             String[] joined = new String[pts.length + args.length];
@@ -88,22 +139,129 @@ public class Main {
             args = joined;
         }
 
+        // Still set for anything after Bootstrap that reads the classpath, such as FML finding mods
         System.setProperty("java.class.path", classpath.toString());
 
+        // Saves Bootstrap asking every library for its classpath modifiers, unless the user already picked them
+        String modifiers = props.getProperty("Bootstrap-Modifiers");
+        if (modifiers != null && System.getProperty("bsl.modifiers") == null)
+            System.setProperty("bsl.modifiers", modifiers);
+
+        if (pack != null) {
+            // Bootstrap reads the libraries straight out of the pack, and hands out bslpack: URLs that need our handler
+            System.setProperty("bsl.pack", pack.getFile().getAbsolutePath());
+            String handlers = System.getProperty("java.protocol.handler.pkgs");
+            String ours = "net.minecraftforge.bootstrap.shim";
+            System.setProperty("java.protocol.handler.pkgs", handlers == null || handlers.isEmpty() ? ours : handlers + '|' + ours);
+        }
+
         ClassLoader parent = Main.class.getClassLoader();
-        URLClassLoader loader = new URLClassLoader(urls.toArray(new URL[urls.size()]), parent);
+        ClassLoader loader = null;
+        Class<?> cls = null;
+        Method main = null;
+        if (!own.isEmpty()) {
+            // Bootstrap builds its own class loaders from the classpath we give it, so only load what it needs to get there
+            loader = pack != null ? new PackClassLoader(pack, ownNames, currentJavaVersion, parent) : new URLClassLoader(ownUrls.toArray(new URL[ownUrls.size()]), parent);
+            try {
+                cls = Class.forName(mainClass, false, loader);
+                main = getHandoff(cls);
+            } catch (ClassNotFoundException | LinkageError e) {
+                if (DEBUG)
+                    Log.log("Could not load " + mainClass + " from Bootstrap-Libraries: " + e);
+            }
+            if (main == null) {
+                if (DEBUG)
+                    Log.log(mainClass + " does not take the classpath from us, loading every library");
+                loader = null;
+            } else if (DEBUG) {
+                Log.log("Not in our class loader, only in Bootstrap's layers (Bootstrap-Libraries):");
+                for (String path : dropped)
+                    Log.log("  " + path);
+            }
+        }
+
+        if (loader == null) {
+            loader = pack != null ? new PackClassLoader(pack, pack.getNames(), currentJavaVersion, parent) : new URLClassLoader(urls.toArray(new URL[urls.size()]), parent);
+            cls = Class.forName(mainClass, false, loader);
+            main = getHandoff(cls);
+        }
 
+        if (DEBUG && main != null)
+            Log.log("Handing " + handoff.size() + " classpath entries to " + mainClass);
+        // Everything we logged goes out before the main class prints anything
+        Log.flush();
         ClassLoader oldCL = Thread.currentThread().getContextClassLoader();
         try {
             Thread.currentThread().setContextClassLoader(loader);
-            Class<?> cls = Class.forName(mainClass, false, loader);
-            Method main = cls.getDeclaredMethod("main", String[].class);
-            main.invoke(null, (Object)args);
+            if (main != null) {
+                main.invoke(null, args, Collections.unmodifiableList(handoff));
+            } else {
+                main = cls.getDeclaredMethod("main", String[].class);
+                main.invoke(null, (Object)args);
+            }
         } finally {
             Thread.currentThread().setContextClassLoader(oldCL);
         }
     }
 
+    /**
+     * Finds {@code public static void main(String[], List<Path>)} on the main class itself, which takes the classpath
+     * we have already found and checked instead of parsing it back out of {@code java.class.path}.
+     */
+    private static Method getHandoff(Class<?> cls) {
+        try {
+            Method ret = cls.getDeclaredMethod("main", String[].class, List.class);
+            return Modifier.isStatic(ret.getModifiers()) && Modifier.isPublic(ret.getModifiers()) ? ret : null;
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /** The JVM's own classpath, checked the same way Bootstrap would, so it doesn't have to do it again. */
+    private static List<Path> getClassPath() throws IOException {
+        List<Path> ret = new ArrayList<>();
+        for (String part : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            if (part.isEmpty())
+                continue;
+            File file = new File(part).getCanonicalFile();
+            if (!file.exists())
+                continue;
+            if (file.isDirectory()) {
+                String[] files = file.list();
+                if (files == null || files.length == 0)
+                    continue;
+            }
+            ret.add(file.toPath());
+        }
+        return ret;
+    }
+
+    private static List<String> split(String value) {
+        List<String> ret = new ArrayList<>();
+        if (value != null) {
+            for (String part : value.split("[\\s,]+")) {
+                if (!part.isEmpty())
+                    ret.add(part);
+            }
+        }
+        return ret;
+    }
+
+    private static List<ListEntry> readList() throws IOException {
+        List<ListEntry> ret = new ArrayList<>();
+        try (
+            InputStream stream = getStream("bootstrap-shim.list");
+            BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))
+        ) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty())
+                    ret.add(ListEntry.from(line));
+            }
+        }
+        return ret;
+    }
+
     private static InputStream getStream(String path) throws IOException {
         InputStream stream = Main.class.getResourceAsStream("/" + path);
         if (stream != null)
@@ -128,29 +286,34 @@ public class Main {
 
     private static final class ListEntry {
         private final String sha256;
-        //private final String id;
+        private final String id;
         private final String path;
 
         private static ListEntry from(String line) {
-            String sha256 = line.substring(0, 64);
-            if (line.charAt(65) != '\t') throw new IllegalArgumentException("Invalid bootstrap config line: " + line);
+            if (line.length() < 65 || line.charAt(64) != '\t') throw new IllegalArgumentException("Invalid bootstrap config line: " + line);
             String[] parts = line.substring(65).split("\t", 2);
-            return new ListEntry(sha256, parts[0], parts[1]);
-        }
-
-        private static String getPathFrom(String line) {
-            return line.substring(65).split("\t", 2)[1];
+            if (parts.length != 2) throw new IllegalArgumentException("Invalid bootstrap config line: " + line);
+            return new ListEntry(line.substring(0, 64), parts[0], parts[1]);
         }
 
         private ListEntry(String sha256, String id, String path) {
             this.sha256 = sha256;
-            //this.id = id;
+            this.id = id;
             this.path = path;
         }
 
+        /** Matches {@code group}, {@code group:name}, or the full id, so it doesn't need updating for every version. */
+        private boolean matches(List<String> ids) {
+            for (String prefix : ids) {
+                if (id.equals(prefix) || id.startsWith(prefix + ':'))
+                    return true;
+            }
+            return false;
+        }
+
         @Override
         public String toString() {
-            return "Entry[" + sha256 + " " + path + "]";
+            return "Entry[" + sha256 + " " + id + " " + path + "]";
         }
     }
 }
@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.bootstrap.shim;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Every library in a single file, so an installation doesn't need hundreds of small files in {@code libraries/}.
+ * <pre>
+ *   "BSLPACK" 0       magic
+ *   int               version
+ *   int               entry count
+ *   entries           UTF path (relative to libraries/), long offset, long length
+ *   data              every jar as is, each starting on a 4096 byte boundary
+ * </pre>
+ * The jars are stored uncompressed and aligned so that each can be memory mapped on its own, and read in place
+ * by the JDK's zip file system. Bootstrap has its own reader for this format in PackFileSystem, keep them in sync.
+ */
+public final class Pack {
+    static final String FILE = "bootstrap-shim.pack";
+    static final String PROTOCOL = "bslpack";
+    private static final byte[] MAGIC = { 'B', 'S', 'L', 'P', 'A', 'C', 'K', 0 };
+    private static final int VERSION = 1;
+    private static final int ALIGN = 4096;
+    private static final Map<File, Pack> OPEN = new ConcurrentHashMap<File, Pack>();
+
+    private final File file;
+    private final Map<String, long[]> entries;
+    private final Map<String, PackJar> jars = new ConcurrentHashMap<String, PackJar>();
+
+    private Pack(File file, Map<String, long[]> entries) {
+        this.file = file;
+        this.entries = entries;
+    }
+
+    static Pack open(File file) throws IOException {
+        file = file.getAbsoluteFile();
+        Pack ret = OPEN.get(file);
+        if (ret == null) {
+            synchronized (OPEN) {
+                ret = OPEN.get(file);
+                if (ret == null) {
+                    ret = read(file);
+                    OPEN.put(file, ret);
+                }
+            }
+        }
+        return ret;
+    }
+
+    private static Pack read(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            for (int x = 0; x < MAGIC.length; x++) {
+                if (magic[x] != MAGIC[x])
+                    throw new IOException("Not a library pack: " + file);
+            }
+            int version = in.readInt();
+            if (version != VERSION)
+                throw new IOException("Unsupported library pack version " + version + ": " + file);
+
+            int count = in.readInt();
+            Map<String, long[]> entries = new LinkedHashMap<String, long[]>();
+            for (int x = 0; x < count; x++) {
+                String name = in.readUTF();
+                entries.put(name, new long[] { in.readLong(), in.readLong() });
+            }
+            return new Pack(file, entries);
+        } finally {
+            in.close();
+        }
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    /** Library paths, in classpath order */
+    List<String> getNames() {
+        return Collections.unmodifiableList(new ArrayList<String>(entries.keySet()));
+    }
+
+    boolean contains(String name) {
+        return entries.containsKey(name);
+    }
+
+    ByteBuffer map(String name) throws IOException {
+        long[] entry = entries.get(name);
+        if (entry == null)
+            throw new IOException("Missing library " + name + " in " + file);
+
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            // The mapping stays valid after the channel is closed
+            return raf.getChannel().map(FileChannel.MapMode.READ_ONLY, entry[0], entry[1]).order(ByteOrder.LITTLE_ENDIAN);
+        } finally {
+            raf.close();
+        }
+    }
+
+    PackJar getJar(String name) throws IOException {
+        PackJar ret = jars.get(name);
+        if (ret == null) {
+            ret = new PackJar(map(name));
+            PackJar existing = jars.get(name);
+            if (existing != null)
+                return existing;
+            jars.put(name, ret);
+        }
+        return ret;
+    }
+
+    /* ======================================================================
+     *                                 URLs
+     * ======================================================================
+     *
+     * bslpack:<pack file>!<library>         The library jar itself
+     * bslpack:<pack file>!<library>!/<path> A file inside the library
+     *
+     * The first separator has no slash, so the JDK's jar: handler doesn't mistake it for the end of the jar's URL.
+     */
+
+    URL getURL(String name, String path) throws MalformedURLException {
+        String spec = file.toURI().getRawPath() + '!' + encode(name) + (path == null ? "" : "!/" + encode(path));
+        return new URL(PROTOCOL, null, -1, spec, net.minecraftforge.bootstrap.shim.bslpack.Handler.INSTANCE);
+    }
+
+    /** Opens a {@code bslpack:} URL, see {@link net.minecraftforge.bootstrap.shim.bslpack.Handler} */
+    public static InputStream open(URL url) throws IOException {
+        String spec = url.getFile();
+        int idx = spec.indexOf('!');
+        if (idx == -1)
+            throw new MalformedURLException("Invalid library pack URL: " + url);
+
+        Pack pack = open(new File(decode(spec.substring(0, idx))));
+        String name = spec.substring(idx + 1);
+        String path = null;
+        idx = name.indexOf("!/");
+        if (idx != -1) {
+            path = decode(name.substring(idx + 2));
+            name = name.substring(0, idx);
+        }
+        name = decode(name);
+
+        if (path == null)
+            return new PackJar.BufferInputStream(pack.map(name));
+
+        InputStream ret = pack.getJar(name).open(path);
+        if (ret == null)
+            throw new IOException("Missing " + path + " in " + name + " in " + pack.file);
+        return ret;
+    }
+
+    private static String encode(String value) throws MalformedURLException {
+        try {
+            return new URI(null, null, value, null).getRawPath();
+        } catch (URISyntaxException e) {
+            throw new MalformedURLException(e.getMessage());
+        }
+    }
+
+    private static String decode(String value) {
+        try {
+            return URLDecoder.decode(value.replace("+", "%2B"), "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e); // Every JVM has UTF-8
+        }
+    }
+
+    /* ======================================================================
+     *                                Writing
+     * ======================================================================
+     */
+
+    static void write(File output, File libraries, List<String> names) throws IOException {
+        // Header size depends on the names, so work it out before writing anything
+        int header = MAGIC.length + 4 + 4;
+        for (String name : names)
+            header += 2 + name.getBytes("UTF-8").length + 8 + 8;
+
+        long offset = align(header);
+        List<long[]> entries = new ArrayList<long[]>();
+        for (String name : names) {
+            long length = new File(libraries, name).length();
+            entries.add(new long[] { offset, length });
+            offset = align(offset + length);
+        }
+        // DataOutputStream counts in an int, which is far more than any installation needs
+        if (offset > Integer.MAX_VALUE)
+            throw new IOException("Libraries are too large to pack: " + offset + " bytes");
+
+        File tmp = new File(output.getAbsoluteFile().getParentFile(), output.getName() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(tmp));
+        try {
+            out.write(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(names.size());
+            for (int x = 0; x < names.size(); x++) {
+                out.writeUTF(names.get(x));
+                out.writeLong(entries.get(x)[0]);
+                out.writeLong(entries.get(x)[1]);
+            }
+
+            byte[] buf = new byte[0x10000];
+            for (int x = 0; x < names.size(); x++) {
+                pad(out, entries.get(x)[0] - out.size());
+                InputStream in = new FileInputStream(new File(libraries, names.get(x)));
+                try {
+                    int len;
+                    while ((len = in.read(buf)) != -1)
+                        out.write(buf, 0, len);
+                } finally {
+                    in.close();
+                }
+            }
+        } finally {
+            out.close();
+        }
+
+        if (output.exists() && !output.delete())
+            throw new IOException("Could not replace " + output);
+        if (!tmp.renameTo(output))
+            throw new IOException("Could not move " + tmp + " to " + output);
+    }
+
+    private static long align(long value) {
+        return (value + ALIGN - 1) / ALIGN * ALIGN;
+    }
+
+    private static void pad(OutputStream out, long count) throws IOException {
+        for (long x = 0; x < count; x++)
+            out.write(0);
+    }
+}
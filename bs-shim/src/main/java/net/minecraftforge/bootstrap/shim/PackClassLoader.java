@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.bootstrap.shim;
+
+import java.io.IOException;
+import java.net.URL;
+import java.security.CodeSource;
+import java.security.SecureClassLoader;
+import java.security.cert.Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+
+/**
+ * Loads classes straight out of the memory mapped jars in a {@link Pack}, in classpath order, the same way the
+ * URLClassLoader would have loaded them out of {@code libraries/}.
+ *
+ * This is only what is needed to start Bootstrap, which builds its own module layers from the pack. So signatures are
+ * not checked here, SecureJar does that once the libraries are on a layer.
+ */
+final class PackClassLoader extends SecureClassLoader {
+    static {
+        ClassLoader.registerAsParallelCapable();
+    }
+
+    private final Pack pack;
+    private final List<String> names;
+    private final List<PackJar> jars = new ArrayList<PackJar>();
+    private final List<CodeSource> sources = new ArrayList<CodeSource>();
+    private final List<Integer> releases = new ArrayList<Integer>();
+    private final int java;
+
+    PackClassLoader(Pack pack, List<String> names, int java, ClassLoader parent) throws IOException {
+        super(parent);
+        this.pack = pack;
+        this.names = names;
+        this.java = java;
+        for (String name : names) {
+            PackJar jar = pack.getJar(name);
+            Manifest manifest = jar.getManifest();
+            boolean multiRelease = manifest != null && "true".equalsIgnoreCase(manifest.getMainAttributes().getValue("Multi-Release"));
+            jars.add(jar);
+            sources.add(new CodeSource(pack.getURL(name, null), (Certificate[])null));
+            releases.add(multiRelease ? java : 8);
+        }
+    }
+
+    /** Finds the entry to use for a path, taking multi-release jars into account. */
+    private String entry(int idx, String path) {
+        PackJar jar = jars.get(idx);
+        for (int version = releases.get(idx); version > 8; version--) {
+            String versioned = "META-INF/versions/" + version + '/' + path;
+            if (jar.contains(versioned))
+                return versioned;
+        }
+        return jar.contains(path) ? path : null;
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        String path = name.replace('.', '/') + ".class";
+        for (int x = 0; x < jars.size(); x++) {
+            String entry = entry(x, path);
+            if (entry == null)
+                continue;
+
+            try {
+                byte[] data = jars.get(x).read(entry);
+                definePackage(name, x);
+                return defineClass(name, data, 0, data.length, sources.get(x));
+            } catch (IOException e) {
+                throw new ClassNotFoundException(name, e);
+            }
+        }
+        throw new ClassNotFoundException(name);
+    }
+
+    @SuppressWarnings("deprecation") // getPackage is the only option on Java 8
+    private void definePackage(String className, int idx) throws IOException {
+        int dot = className.lastIndexOf('.');
+        if (dot == -1)
+            return;
+
+        String name = className.substring(0, dot);
+        if (getPackage(name) != null)
+            return;
+
+        Manifest manifest = jars.get(idx).getManifest();
+        try {
+            if (manifest == null) {
+                definePackage(name, null, null, null, null, null, null, null);
+            } else {
+                Attributes main = manifest.getMainAttributes();
+                Attributes section = manifest.getAttributes(name.replace('.', '/') + '/');
+                definePackage(name,
+                    attribute(section, main, Attributes.Name.SPECIFICATION_TITLE),
+                    attribute(section, main, Attributes.Name.SPECIFICATION_VERSION),
+                    attribute(section, main, Attributes.Name.SPECIFICATION_VENDOR),
+                    attribute(section, main, Attributes.Name.IMPLEMENTATION_TITLE),
+                    attribute(section, main, Attributes.Name.IMPLEMENTATION_VERSION),
+                    attribute(section, main, Attributes.Name.IMPLEMENTATION_VENDOR),
+                    null);
+            }
+        } catch (IllegalArgumentException e) {
+            // Another thread beat us to it
+            if (getPackage(name) == null)
+                throw e;
+        }
+    }
+
+    private static String attribute(Attributes section, Attributes main, Attributes.Name name) {
+        String ret = section == null ? null : section.getValue(name);
+        return ret != null ? ret : main.getValue(name);
+    }
+
+    @Override
+    protected URL findResource(String name) {
+        for (int x = 0; x < jars.size(); x++) {
+            URL ret = url(x, name);
+            if (ret != null)
+                return ret;
+        }
+        return null;
+    }
+
+    @Override
+    protected Enumeration<URL> findResources(String name) {
+        List<URL> ret = new ArrayList<URL>();
+        for (int x = 0; x < jars.size(); x++) {
+            URL url = url(x, name);
+            if (url != null)
+                ret.add(url);
+        }
+        return Collections.enumeration(ret);
+    }
+
+    private URL url(int idx, String name) {
+        String entry = entry(idx, name);
+        if (entry == null)
+            return null;
+        try {
+            return pack.getURL(names.get(idx), entry);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PackClassLoader[" + pack.getFile() + ", libraries=" + names.size() + ", java=" + java + ']';
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.bootstrap.shim;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.jar.Manifest;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Minimal read only view of a jar that is already in memory, only as much as the shim needs to load classes
+ * and resources out of a {@link Pack}. Zip64 is not supported, no library is big enough to need it.
+ */
+final class PackJar {
+    private static final int EOCD = 0x06054b50;
+    private static final int CEN = 0x02014b50;
+    private static final int LOC = 0x04034b50;
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+
+    private final ByteBuffer data;
+    private final Map<String, Integer> entries = new HashMap<String, Integer>();
+    private Manifest manifest;
+    private boolean manifestRead = false;
+
+    PackJar(ByteBuffer data) throws IOException {
+        this.data = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+
+        int eocd = -1;
+        int min = Math.max(0, this.data.limit() - 0xFFFF - 22);
+        for (int x = this.data.limit() - 22; x >= min && eocd == -1; x--) {
+            if (this.data.getInt(x) == EOCD)
+                eocd = x;
+        }
+        if (eocd == -1)
+            throw new IOException("Invalid jar, missing end of central directory");
+
+        int count = this.data.getShort(eocd + 10) & 0xFFFF;
+        long offset = this.data.getInt(eocd + 16) & 0xFFFFFFFFL;
+        if (count == 0xFFFF || offset == 0xFFFFFFFFL)
+            throw new IOException("Zip64 jars are not supported");
+
+        int pos = (int)offset;
+        for (int x = 0; x < count; x++) {
+            if (this.data.getInt(pos) != CEN)
+                throw new IOException("Invalid jar, bad central directory entry at " + pos);
+            int nameLen = this.data.getShort(pos + 28) & 0xFFFF;
+            int extraLen = this.data.getShort(pos + 30) & 0xFFFF;
+            int commentLen = this.data.getShort(pos + 32) & 0xFFFF;
+            String name = string(pos + 46, nameLen);
+            if (!entries.containsKey(name))
+                entries.put(name, pos);
+            pos += 46 + nameLen + extraLen + commentLen;
+        }
+    }
+
+    private String string(int pos, int length) {
+        byte[] buf = new byte[length];
+        ByteBuffer dup = data.duplicate();
+        dup.position(pos);
+        dup.get(buf);
+        return new String(buf, StandardCharsets.UTF_8);
+    }
+
+    boolean contains(String name) {
+        return entries.containsKey(name);
+    }
+
+    /**
+     * @return The entry's contents, or null if it doesn't exist
+     */
+    InputStream open(String name) throws IOException {
+        Integer cen = entries.get(name);
+        if (cen == null)
+            return null;
+
+        int method = data.getShort(cen + 10) & 0xFFFF;
+        int compressed = data.getInt(cen + 20);
+        int loc = data.getInt(cen + 42);
+        if (data.getInt(loc) != LOC)
+            throw new IOException("Invalid jar, bad local header for " + name);
+
+        // The local header's extra field can be different from the central directory's
+        int start = loc + 30 + (data.getShort(loc + 26) & 0xFFFF) + (data.getShort(loc + 28) & 0xFFFF);
+        ByteBuffer slice = data.duplicate();
+        slice.position(start);
+        slice.limit(start + compressed);
+
+        if (method == STORED)
+            return new BufferInputStream(slice.slice());
+        if (method == DEFLATED)
+            return new InflaterInputStream(new BufferInputStream(slice.slice()), new Inflater(true));
+        throw new IOException("Unsupported compression method " + method + " for " + name);
+    }
+
+    byte[] read(String name) throws IOException {
+        InputStream in = open(name);
+        if (in == null)
+            return null;
+        try {
+            Integer cen = entries.get(name);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.getInt(cen + 24));
+            byte[] buf = new byte[0x2000];
+            int len;
+            while ((len = in.read(buf)) != -1)
+                out.write(buf, 0, len);
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    synchronized Manifest getManifest() throws IOException {
+        if (!manifestRead) {
+            manifestRead = true;
+            InputStream in = open("META-INF/MANIFEST.MF");
+            if (in != null) {
+                try {
+                    manifest = new Manifest(in);
+                } finally {
+                    in.close();
+                }
+            }
+        }
+        return manifest;
+    }
+
+    static final class BufferInputStream extends InputStream {
+        private final ByteBuffer buf;
+
+        BufferInputStream(ByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        @Override
+        public int read() {
+            return buf.hasRemaining() ? buf.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0)
+                return 0;
+            if (!buf.hasRemaining())
+                return -1;
+            len = Math.min(len, buf.remaining());
+            buf.get(b, off, len);
+            return len;
+        }
+
+        @Override
+        public int available() {
+            return buf.remaining();
+        }
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.bootstrap.shim.bslpack;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+
+import net.minecraftforge.bootstrap.shim.Pack;
+
+/**
+ * Handler for {@code bslpack:} URLs, found by the JVM through the {@code java.protocol.handler.pkgs} system property
+ * which the shim sets when it runs from a library pack.
+ */
+public class Handler extends URLStreamHandler {
+    public static final Handler INSTANCE = new Handler();
+
+    @Override
+    protected URLConnection openConnection(URL url) throws IOException {
+        return new URLConnection(url) {
+            @Override
+            public void connect() {
+                connected = true;
+            }
+
+            @Override
+            public InputStream getInputStream() throws IOException {
+                connect();
+                return Pack.open(getURL());
+            }
+        };
+    }
+}
@@ -9,6 +9,7 @@ module net.minecraftforge.bootstrap {
 
     requires net.minecraftforge.bootstrap.api;
     requires net.minecraftforge.unsafe;
+    requires java.management;
 
     uses net.minecraftforge.bootstrap.api.BootstrapEntryPoint;
     uses net.minecraftforge.bootstrap.api.BootstrapClasspathModifier;
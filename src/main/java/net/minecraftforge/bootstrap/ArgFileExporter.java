@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.bootstrap;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import cpw.mods.jarhandling.SecureJar;
+import net.minecraftforge.bootstrap.api.BootstrapLog;
+
+/**
+ * Writes a java launcher argument file that starts the same set of modules directly on the JVM's module path,
+ * so simple setups can skip Bootstrap entirely on later launches: {@code java @file [args]}
+ *
+ * The modules are exactly the ones this launch put on the boot and runtime layers, from the classpath entries they
+ * were built from. Not everything Bootstrap does can be expressed that way. Merged entries need a union file system,
+ * exploded directories need a module-info, and the JVM puts every module in one class loader so packages can't be
+ * shared between the boot and runtime layers. Anything like that fails the export, and no file is written.
+ *
+ * Program arguments are not written, they can hold things like access tokens. Classpath modifiers don't run on the
+ * module path, so if they changed the arguments, the changed ones have to be passed instead, Bootstrap warns about that.
+ */
+final class ArgFileExporter {
+    private static final String MAIN = "net.minecraftforge.bootstrap/" + ModulePathMain.class.getName();
+    private static final String MODULE_INFO = "module-info.class";
+
+    private ArgFileExporter() {}
+
+    /**
+     * @param jars    What Bootstrap built for every classpath entry, in the same order
+     * @param runtime The jars on the runtime layer
+     * @throws IllegalStateException If a module on either layer can't be traced back to its classpath entry,
+     *                               or can't be started the same way from the module path
+     */
+    static void export(Path target, List<Path[]> classpath, List<SecureJar> jars, ModuleLayer bootlayer, List<SecureJar> runtime) {
+        if (jars == null || jars.size() != classpath.size())
+            throw new IllegalStateException("Can not export " + target + ", the classpath entries of the runtime modules are unknown");
+
+        var selected = Collections.newSetFromMap(new IdentityHashMap<SecureJar, Boolean>());
+        selected.addAll(runtime);
+        var remaining = new HashSet<String>();
+        for (var module : bootlayer.configuration().modules()) {
+            // The JVM's own modules resolved into our layer are still there on the module path
+            var location = module.reference().location();
+            if (location.isEmpty() || !"jrt".equals(location.get().getScheme()))
+                remaining.add(module.name());
+        }
+
+        var modules = new LinkedHashMap<String, Path>();
+        var packages = new HashMap<String, Set<String>>();
+        var problems = new ArrayList<String>();
+
+        for (int x = 0; x < classpath.size(); x++) {
+            var paths = classpath.get(x);
+            var jar = jars.get(x);
+            var name = jar.name();
+            // Same as selectRuntimeModules, anything the boot layer can see is left out of the runtime layer
+            boolean boot = bootlayer.findModule(name).isPresent();
+            if (!boot && !selected.remove(jar))
+                continue; // Not a module Bootstrap loaded, such as mod files that are located later
+            remaining.remove(name);
+
+            if (packages.containsKey(name)) {
+                problems.add("Duplicate module " + name + ": " + paths[paths.length - 1]);
+                continue;
+            }
+            packages.put(name, jar.getPackages());
+
+            if (paths.length > 1) {
+                var buf = new StringBuilder("Merged module " + name + " needs a union jar:");
+                for (var path : paths)
+                    buf.append("\n    ").append(path);
+                problems.add(buf.toString());
+                continue;
+            }
+
+            var path = paths[0];
+            if (Files.isDirectory(path) && !Files.exists(path.resolve(MODULE_INFO))) {
+                problems.add("Exploded automatic module " + name + " is not supported by the JVM: " + path);
+                continue;
+            }
+
+            modules.put(name, path);
+        }
+
+        for (var jar : selected)
+            remaining.add(jar.name());
+        if (!remaining.isEmpty())
+            throw new IllegalStateException("Can not export " + target + ", no classpath entry matches the modules " + new TreeSet<>(remaining));
+
+        // The JVM loads every module path module in the same class loader, so packages can't overlap like they can between our layers
+        var owners = new HashMap<String, String>();
+        for (var name : modules.keySet()) {
+            for (var pkg : packages.get(name)) {
+                var existing = owners.putIfAbsent(pkg, name);
+                if (existing != null && !existing.equals(name))
+                    problems.add("Package " + pkg + " is in both " + existing + " and " + name);
+            }
+        }
+
+        // The file has to start exactly what this launch did, or it's worse than no file
+        if (!problems.isEmpty()) {
+            var buf = new StringBuilder("Can not export " + target + ", the following can not be expressed on the module path:");
+            for (var problem : problems)
+                buf.append("\n  ").append(problem.replace("\n", "\n  "));
+            throw new IllegalStateException(buf.toString());
+        }
+
+        var lines = new ArrayList<String>();
+        lines.add("# Generated by Bootstrap, launch with: java @" + target.getFileName() + " [args]");
+
+        var modulePath = new StringBuilder();
+        for (var path : modules.values()) {
+            if (modulePath.length() != 0)
+                modulePath.append(File.pathSeparatorChar);
+            modulePath.append(path.toAbsolutePath());
+        }
+
+        lines.add("--module-path");
+        lines.add(quote(modulePath.toString()));
+        lines.add("--add-modules");
+        lines.add(String.join(",", modules.keySet()));
+        lines.add("-m");
+        lines.add(MAIN);
+
+        try {
+            var parent = target.toAbsolutePath().getParent();
+            if (parent != null)
+                Files.createDirectories(parent);
+            Files.write(target, lines, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            sneak(e);
+        }
+
+        BootstrapLog.info("Exported " + modules.size() + " modules to " + target);
+    }
+
+    // Argument files treat backslashes as escapes inside quotes, which matters for Windows paths
+    private static String quote(String value) {
+        return '"' + value.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E extends Throwable, R> R sneak(Exception exception) throws E {
+        throw (E)exception;
+    }
+}
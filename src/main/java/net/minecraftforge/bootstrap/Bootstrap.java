@@ -4,35 +4,145 @@
  */
 package net.minecraftforge.bootstrap;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.lang.module.Configuration;
 import java.lang.module.ModuleFinder;
 import java.lang.reflect.Method;
-import java.net.URL;
-import java.net.URLClassLoader;
-import java.nio.file.Files;
+import java.nio.file.FileSystems;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.ServiceLoader;
 import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
 import java.util.stream.Collectors;
 
 import cpw.mods.jarhandling.SecureJar;
 import net.minecraftforge.bootstrap.api.BootstrapClasspathModifier;
 import net.minecraftforge.bootstrap.api.BootstrapEntryPoint;
+import net.minecraftforge.bootstrap.api.BootstrapIO;
+import net.minecraftforge.bootstrap.api.BootstrapLog;
+import net.minecraftforge.bootstrap.api.BootstrapServices;
+import net.minecraftforge.bootstrap.api.Util;
 import net.minecraftforge.securemodules.SecureModuleClassLoader;
 import net.minecraftforge.securemodules.SecureModuleFinder;
 import net.minecraftforge.unsafe.UnsafeHacks;
 
 public class Bootstrap {
-    static final boolean DEBUG = Boolean.getBoolean("bsl.debug");
+    static final boolean DEBUG = BootstrapLog.enabled(BootstrapLog.Level.DEBUG);
+    static final boolean VERIFY = Boolean.getBoolean("bsl.verify");
+    static final String EXPORT = System.getProperty("bsl.export");
+    static final boolean LAZY = Boolean.getBoolean("bsl.lazy");
+    static final String LOADERS = System.getProperty("bsl.loaders", "single");
+    static final String LOADER_GROUPS = System.getProperty("bsl.loaders.groups");
+    static final String PACK = System.getProperty("bsl.pack");
+    static final String BOOT = System.getProperty("bsl.boot");
+    private static final Attributes.Name MODULE_GROUP = new Attributes.Name("Forge-Module-Group");
+    private static final Attributes.Name MODULE_LAYER = new Attributes.Name("Forge-Module-Layer");
+    private static final String BOOT_LAYER = "boot";
+    // Jars we built, so that the ones nothing ended up using can be closed before the entry point runs
+    private final List<SecureJar> opened = new ArrayList<>();
+    // Only set while we build jars for the whole classpath, so that it's saved once per pass
+    private volatile DirectoryIndex directories;
+    // The entry point moduleMain found, left for start to run
+    private Runnable entry;
+    // What runtimeJars built for every classpath entry, only kept for bsl.export
+    private List<SecureJar> classpathJars;
+
+    // Debug output, anything the user asked for or has to see is logged at its own level
     static void log(String message) {
-        System.out.println(message);
+        BootstrapLog.debug(message);
     }
 
+    @SuppressWarnings("try")
     protected void start(String... args) throws Exception {
-        var raw = findAllClassPathEntries();
+        List<Path> raw;
+        try (var phase = BootstrapIO.phase("findAllClassPathEntries")) {
+            raw = findAllClassPathEntries();
+        }
+        start(args, raw);
+    }
+
+    /**
+     * Starts from a classpath that has already been found and checked, such as the one the shim hands us,
+     * instead of parsing it back out of {@code java.class.path}. Libraries in the shim's pack are added here.
+     */
+    protected void start(String[] args, List<Path> raw) throws Exception {
+        // Everything it took to get here is unreachable once prepare returns, only the entry point stays on the stack
+        Runnable entry;
+        try {
+            entry = prepare(args, raw);
+        } finally {
+            // Our log is written in the background, get it all out before the entry point or the error prints anything
+            BootstrapLog.handoff();
+        }
+        if (entry != null)
+            entry.run();
+    }
+
+    /**
+     * The entry point {@link #moduleMain(String[], List)} found, which it leaves for {@link #start(String[], List)} to run
+     * once everything else is unreachable. Null if nothing was found, like when a subclass already ran it.
+     */
+    Runnable handoff() {
+        var ret = entry;
+        entry = null;
+        return ret;
+    }
+
+    // Same as handoff(), on a copy of this class in another class loader
+    private static Runnable handoff(Object inst) throws ReflectiveOperationException {
+        var handoff = findMethod(inst.getClass(), "handoff");
+        if (handoff == null)
+            throw new IllegalStateException("Could not find \"handoff()\" on " + inst.getClass().getName());
+        UnsafeHacks.setAccessible(handoff);
+        return (Runnable)handoff.invoke(inst);
+    }
+
+    /*
+     * The copy of bs-api in a class loader we're about to hand off to has its own log and I/O counters, so it is given
+     * ours before any of its code runs.
+     */
+    private static void share(ClassLoader cl) throws ReflectiveOperationException {
+        var log = Class.forName(BootstrapLog.class.getName(), true, cl);
+        if (log != BootstrapLog.class)
+            log.getMethod("share", Object.class).invoke(null, BootstrapLog.shared());
+        var io = Class.forName(BootstrapIO.class.getName(), true, cl);
+        if (io != BootstrapIO.class)
+            io.getMethod("share", Object.class).invoke(null, BootstrapIO.shared());
+    }
+
+    @SuppressWarnings("try")
+    private Runnable prepare(String[] args, List<Path> raw) throws Exception {
+        // Before anything else opens the jars, so that every broken one is reported at once
+        if (JarChecker.ENABLED) {
+            try (var phase = BootstrapIO.phase("check")) {
+                JarChecker.check(raw);
+            }
+        }
+        // What the class loader can see, for finding the modifiers
+        var original = raw;
+        if (PACK != null) {
+            try (var phase = BootstrapIO.phase("pack")) {
+                raw = withPack(raw);
+            }
+        }
+        if (ClasspathDeduper.enabled()) {
+            try (var phase = BootstrapIO.phase("dedupe")) {
+                raw = ClasspathDeduper.dedupe(raw);
+            }
+        }
         var classpath = new ArrayList<Path[]>(raw.size());
         var processed = new ArrayList<Path[]>(raw.size());
         for (var path : raw) {
@@ -42,77 +152,120 @@ public class Bootstrap {
 
         var cl = Thread.currentThread().getContextClassLoader();
         var modified = false;
-        for (var itr = ServiceLoader.load(BootstrapClasspathModifier.class, cl).iterator(); itr.hasNext(); ) {
-            var service = itr.next();
+        var given = args;
+        var cache = ModifierCache.load();
+        List<BootstrapClasspathModifier> services;
+        try (var phase = BootstrapIO.phase("modifiers")) {
+            services = ModifierIndex.find(cl, original);
+        }
+        for (var service : services) {
+            var key = cache.key(service, args, processed);
+            var replay = cache.replay(service, key);
+            if (replay != null) {
+                if (DEBUG)
+                    log("Replaying Service: " + service.name());
+                args = replay.args();
+                processed.clear();
+                processed.addAll(replay.classpath());
+                modified |= replay.modified();
+                continue;
+            }
+
             if (DEBUG)
                 log("Calling Service: " + service.name());
-            args = service.arguments(args);
-            modified |= service.process(processed);
+            boolean changed;
+            try (var phase = BootstrapIO.phase("modifier:" + service.name())) {
+                args = service.arguments(args);
+                changed = service.process(processed);
+            }
+            modified |= changed;
+            cache.store(service, key, new ModifierCache.Result(args, processed, changed));
         }
+        cache.save();
+
+        // The argument file can't run modifiers, and doesn't hold arguments, so whoever launches it has to know
+        if (EXPORT != null && !Arrays.equals(given, args))
+            BootstrapLog.warn("Classpath modifiers changed the program arguments, launches from " + EXPORT + " have to pass the changed ones");
 
         if (!modified) {
             bootstrapMain(args, classpath);
-            return;
+            return handoff();
         }
 
-        if (modified) {
-            if (DEBUG)
-                log("Services modified the classpath, building new classloader:");
-
-            var urls = new ArrayList<URL>();
-            for (var paths : processed) {
-                if (paths == null)
-                    continue;
-
-                if (paths.length == 1) {
-                    var url = paths[0].toUri().toURL();
-                    urls.add(url);
-                    if (DEBUG)
-                        log("    " + url);
-                } else {
-                    var ordered = new Path[paths.length];
-                    // SecureJar is last win instead of first win like the class path
-                    for (int x = 0; x < paths.length; x++)
-                        ordered[x] = paths[paths.length - x - 1];
-                    var jar = SecureJar.from(ordered);
-                    var url = jar.getRootPath().toUri().toURL();
-                    urls.add(url);
-                    if (DEBUG) {
-                        log("    " + url);
-                        for (var path : paths)
-                            log("        " + path.toUri().toURL());
-                    }
+        if (DEBUG)
+            log("Services modified the classpath, building new classloader:");
+
+        var roots = new ArrayList<Path>();
+        for (var paths : processed) {
+            if (paths == null)
+                continue;
+
+            if (paths.length == 1) {
+                roots.add(paths[0]);
+                if (DEBUG)
+                    log("    " + paths[0].toUri().toURL());
+            } else {
+                var ordered = new Path[paths.length];
+                // SecureJar is last win instead of first win like the class path
+                for (int x = 0; x < paths.length; x++)
+                    ordered[x] = paths[paths.length - x - 1];
+                var jar = SecureJar.from(ordered);
+                roots.add(jar.getRootPath());
+                if (DEBUG) {
+                    log("    " + jar.getRootPath().toUri().toURL());
+                    for (var path : paths)
+                        log("        " + path.toUri().toURL());
                 }
             }
+        }
+
+        var platform = ClassLoader.getPlatformClassLoader(); // Use Platform so any modules that arn't explicitly asked for can be found/hot loaded.
+        IndexedClassLoader newCL;
+        try (var phase = BootstrapIO.phase("CLEANED-BOOTSTRAP")) {
+            newCL = new IndexedClassLoader("CLEANED-BOOTSTRAP", roots, platform, ClassLoaderMetrics.create("CLEANED-BOOTSTRAP"));
+        }
 
-            var platform = ClassLoader.getPlatformClassLoader(); // Use Platform so any modules that arn't explicitly asked for can be found/hot loaded.
-            var newCL = new URLClassLoader("CLEANED-BOOTSTRAP", urls.toArray(URL[]::new), platform);
+        try {
+            Thread.currentThread().setContextClassLoader(newCL);
+            share(newCL);
+            // Find ourselves in the new class loader with joined paths
+            var self = Class.forName(this.getClass().getName(), false, newCL);
+            var inst = self.getDeclaredConstructor().newInstance();
 
-            try {
-                Thread.currentThread().setContextClassLoader(newCL);
-                // Find ourselves in the new class loader with joined paths
-                var self = Class.forName(this.getClass().getName(), false, newCL);
-                var inst = self.getDeclaredConstructor().newInstance();
-
-                // And now invoke main as if we had done all the command line arguments to specify modules!
-                var main = findMethod(self, "bootstrapMain", String[].class, List.class);
-                if (main == null)
-                    throw new IllegalStateException("Could not find \"bootstrapMain(String[], List<Path[]>))\" on " + self.getName());
-                UnsafeHacks.setAccessible(main);
-                main.invoke(inst, (Object)args, processed);
-            } finally {
-                Thread.currentThread().setContextClassLoader(cl);
-            }
+            // And now invoke main as if we had done all the command line arguments to specify modules!
+            var main = findMethod(self, "bootstrapMain", String[].class, List.class);
+            if (main == null)
+                throw new IllegalStateException("Could not find \"bootstrapMain(String[], List<Path[]>))\" on " + self.getName());
+            UnsafeHacks.setAccessible(main);
+            main.invoke(inst, (Object)args, processed);
+            return handoff(inst);
+        } finally {
+            Thread.currentThread().setContextClassLoader(cl);
+            if (DEBUG)
+                log("Classloader stats: " + newCL);
         }
     }
 
+    /**
+     * Builds the bootstrap layer and then the runtime layer from the classpath. The entry point isn't run here,
+     * see {@link #handoff()}.
+     */
+    @SuppressWarnings("try")
     protected void bootstrapMain(String[] args, List<Path[]> classpath) {
         try {
             // Default parent class loader
             var cl = Thread.currentThread().getContextClassLoader();
             // This should be the AppClassloader but doesn't quite work right, can't remember why off hand but I had it commented out for a reason
             // cl == BaseBootstrap.class.getClassLoader();
-            var boot = selectBootModules(classpath);
+            // Verification reads every jar in full, and nothing needs it until we hand off to the module layer
+            Future<?> verify = null;
+            if (VERIFY)
+                verify = Pipeline.submit(() -> { verifyClasspath(classpath); return null; });
+
+            List<SecureJar> boot;
+            try (var phase = BootstrapIO.phase("selectBootModules")) {
+                boot = selectBootModules(classpath);
+            }
 
             // First we need to get ourselves onto a module layer, so that we can be the parent of the actual runtime layer
             var finder = SecureModuleFinder.of(boot.toArray(SecureJar[]::new));
@@ -123,6 +276,7 @@ public class Bootstrap {
             // Find ourselves in the new fancy module environment.
             var bootstrap = layer.findModule("net.minecraftforge.bootstrap").get();
             var moduleCl = bootstrap.getClassLoader();
+            share(moduleCl);
             var self = Class.forName(this.getClass().getName(), false, moduleCl);
             var inst = self.getDeclaredConstructor().newInstance();
 
@@ -131,71 +285,268 @@ public class Bootstrap {
             if (moduleMain == null)
                 throw new IllegalStateException("Could not find \"moduleMain(String[], List<Path[]>))\" on " + self.getName());
             UnsafeHacks.setAccessible(moduleMain);
+            if (verify != null)
+                Pipeline.join(verify);
             moduleMain.invoke(inst, (Object)args, classpath);
+            entry = handoff(inst);
+            release(boot);
         } catch (Exception e) {
             sneak(e);
         }
     }
 
-    protected List<SecureJar> selectBootModules(List<Path[]> classpath) {
-        var ret = new ArrayList<SecureJar>();
-        var bootLibraries = Set.of(
+    protected void verifyClasspath(List<Path[]> classpath) {
+        var verifier = VerificationCache.load();
+        try {
+            verifier.verify(classpath);
+        } finally {
+            verifier.save();
+            if (DEBUG)
+                log("Verified classpath signatures: " + verifier.hits() + " cached, " + verifier.misses() + " verified");
+        }
+    }
+
+    /**
+     * Modules that go on the boot layer with us, everything else is left for the runtime layer.
+     * The {@code bsl.boot} system property adds to these, and so does a {@code Forge-Module-Layer: boot} manifest attribute.
+     */
+    protected Set<String> bootModules() {
+        var ret = new HashSet<>(Set.of(
             "cpw.mods.securejarhandler",
             "net.minecraftforge.unsafe",
             "net.minecraftforge.bootstrap",
             "net.minecraftforge.bootstrap.api",
             "org.objectweb.asm",
             "org.objectweb.asm.tree"
-        );
+        ));
+        if (BOOT != null) {
+            for (var name : BOOT.split(",")) {
+                if (!name.isBlank())
+                    ret.add(name.trim());
+            }
+        }
+        return ret;
+    }
 
-        for (var paths : classpath) {
-            var jar = secureJar(paths);
-            if (bootLibraries.contains(jar.moduleDataProvider().name()))
+    protected List<SecureJar> selectBootModules(List<Path[]> classpath) {
+        var bootLibraries = bootModules();
+
+        // The name and layer are all we need to pick, which is a lot less than a SecureJar reads
+        var cache = LAZY && LaunchCache.enabled() ? JarInfoCache.load() : null;
+        var candidates = Pipeline.map(classpath, paths -> {
+            var info = probeModule(paths, cache);
+            // Anything we can't name without a SecureJar gets one, same as before
+            return info == null || info.name() == null || bootLibraries.contains(info.name()) || BOOT_LAYER.equals(info.layer());
+        });
+        var selected = new ArrayList<Path[]>();
+        for (int x = 0; x < classpath.size(); x++) {
+            if (candidates.get(x))
+                selected.add(classpath.get(x));
+        }
+        if (DEBUG) log("Probed " + classpath.size() + " classpath entries for boot modules, opening " + selected.size());
+
+        directories = DirectoryIndex.enabled() ? DirectoryIndex.load() : null;
+        var jars = Pipeline.map(selected, this::secureJar);
+        if (directories != null)
+            directories.save();
+        directories = null;
+        opened.addAll(jars);
+
+        var ret = new ArrayList<SecureJar>();
+        for (var jar : jars) {
+            // SecureJar has the final say, the probe only decides what is worth opening
+            var meta = jar.moduleDataProvider();
+            if (bootLibraries.contains(meta.name()) || BOOT_LAYER.equals(meta.getManifest().getMainAttributes().getValue(MODULE_LAYER)))
                 ret.add(jar);
         }
 
         return ret;
     }
 
+    /*
+     * Name and layer of a classpath entry from its module-info and manifest, or from the jar info cache when lazy jars
+     * are enabled, which only costs a stat. Null if it can't be read, then SecureJar can report the error.
+     */
+    private static Util.ModuleInfo probeModule(Path[] paths, JarInfoCache cache) {
+        if (cache != null && paths.length == 1) {
+            var info = cache.get(paths[0], Set.of());
+            if (info != null) {
+                try {
+                    var manifest = new Manifest(new ByteArrayInputStream(info.manifest()));
+                    return new Util.ModuleInfo(info.descriptor().name(), null, manifest.getMainAttributes().getValue(MODULE_LAYER));
+                } catch (IOException e) {
+                    // Fall back to reading the jar
+                }
+            }
+        }
+        try {
+            return Util.findAutomaticModule(paths);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Builds the runtime layer and finds the entry point in it. The entry point isn't run here, it is left for
+     * {@link #handoff()} ready to run with the thread context class loader it expects.
+     */
+    @SuppressWarnings("try")
     protected void moduleMain(String[] args, List<Path[]> classpath) throws Exception {
         var bootlayer = getClass().getModule().getLayer();
-        var secure = selectRuntimeModules(classpath);
+        List<SecureJar> secure;
+        try (var phase = BootstrapIO.phase("selectRuntimeModules")) {
+            secure = selectRuntimeModules(classpath);
+        }
+
+        if (EXPORT != null)
+            ArgFileExporter.export(Path.of(EXPORT), classpath, classpathJars, bootlayer, secure);
+        if (LoadOrder.ENABLED)
+            LoadOrder.start(secure);
 
         // Now lets build a layer that has all the non-Bootstrap/SecureModule libraries on it.
         var finder = SecureModuleFinder.of(secure.toArray(SecureJar[]::new));
         var targets = secure.stream().map(SecureJar::name).toList();
         var cfg = bootlayer.configuration().resolveAndBind(finder, ModuleFinder.ofSystem(), targets);
         var parent = List.of(ModuleLayer.boot(), bootlayer);
+        var services = BootstrapServices.index(cfg, targets);
 
         // Use the current classloader as the parent, if set, so that we don't get things from the bootstrap loader.
         var oldcl = Thread.currentThread().getContextClassLoader();
-        var cl = new SecureModuleClassLoader("SECURE-BOOTSTRAP", null, cfg, parent, oldcl == null ? List.of() : List.of(oldcl));
-        var layer = bootlayer.defineModules(cfg, module -> cl);
+        var fallback = oldcl == null ? List.<ClassLoader>of() : List.of(ParentMissCache.wrap(oldcl));
+        ClassLoader cl;
+        ModuleLayer layer;
+        if ("single".equals(LOADERS)) {
+            var metrics = ClassLoaderMetrics.create("SECURE-BOOTSTRAP");
+            var single = metrics == null && !LoadOrder.ENABLED
+                ? new SecureModuleClassLoader("SECURE-BOOTSTRAP", null, cfg, parent, fallback)
+                : new InstrumentedSecureModuleClassLoader("SECURE-BOOTSTRAP", null, cfg, parent, fallback, metrics);
+            layer = defineModules(cfg, bootlayer, module -> single, services);
+            cl = single;
+        } else {
+            var groups = loaderGroups(secure);
+            var loaders = ModuleGroupClassLoader.create("SECURE-BOOTSTRAP", cfg, parent, secure, jar -> groups.get(jar.name()), fallback);
+            layer = defineModules(cfg, bootlayer, loaders::get, services);
+            // Only until the entry point is found, which then uses its own module's loader
+            cl = loaders.isEmpty() ? oldcl : loaders.values().iterator().next();
+        }
 
         try {
             Thread.currentThread().setContextClassLoader(cl);
-            var services = ServiceLoader.load(layer, BootstrapEntryPoint.class).stream().toList();
+            var providers = BootstrapServices.stream(BootstrapEntryPoint.class).toList();
+            // The index only covers the runtime layer, so check the parent layers the way we used to
+            if (providers.isEmpty())
+                providers = ServiceLoader.load(layer, BootstrapEntryPoint.class).stream().toList();
 
-            if (services.isEmpty())
+            if (providers.isEmpty())
                 throw new IllegalStateException("Could not find any " + BootstrapEntryPoint.class.getName() + " service providers");
 
-            if (services.size() > 1) {
+            if (providers.size() > 1) {
                 throw new IllegalStateException("Found multiple " + BootstrapEntryPoint.class.getName() + " service providers: " +
-                    services.stream().map(p -> p.get().name()).collect(Collectors.joining(", ")));
+                    providers.stream().map(p -> p.get().name()).collect(Collectors.joining(", ")));
             }
 
-            var loader = services.get(0).get();
-            if (DEBUG) log("Starting: " + loader.getClass().getModule().getName() + '/' + loader.name());
-            loader.main(args);
+            // With multiple loaders the entry point's own loader is the closest to what a single loader would provide,
+            // and it is already the context while the entry point is created
+            var context = providers.get(0).type().getClassLoader();
+            Thread.currentThread().setContextClassLoader(context);
+            var loader = providers.get(0).get();
+            if (BootstrapIO.ENABLED)
+                BootstrapIO.report().forEach(BootstrapLog::info);
+            // Most misses come later, but this shows the cache is in place and what Bootstrap itself asked for
+            if (DEBUG && !fallback.isEmpty() && fallback.get(0) instanceof ParentMissCache cache)
+                log("Parent miss cache stats: " + cache);
+            entry = () -> {
+                var previous = Thread.currentThread().getContextClassLoader();
+                try {
+                    if (DEBUG) log("Starting: " + loader.getClass().getModule().getName() + '/' + loader.name());
+                    Thread.currentThread().setContextClassLoader(context);
+                    loader.main(args);
+                } finally {
+                    Thread.currentThread().setContextClassLoader(previous);
+                }
+            };
         } finally {
             Thread.currentThread().setContextClassLoader(oldcl);
         }
+
+        release(secure);
+    }
+
+    /**
+     * Closes every jar this copy of Bootstrap opened that didn't end up on a layer, so that servers don't keep
+     * their file systems and file descriptors open for days. Jars on a layer are still being read from, and lazy
+     * jars that were never opened have nothing to close.
+     */
+    private void release(List<SecureJar> kept) {
+        var keep = Collections.newSetFromMap(new IdentityHashMap<SecureJar, Boolean>());
+        keep.addAll(kept);
+        int closed = 0;
+        for (var jar : opened) {
+            if (keep.contains(jar) || (jar instanceof LazyJar lazy && !lazy.isOpen()))
+                continue;
+            try {
+                var fs = jar.getRootPath().getFileSystem();
+                if (fs != FileSystems.getDefault() && fs.isOpen()) {
+                    fs.close();
+                    closed++;
+                }
+            } catch (IOException | UnsupportedOperationException e) {
+                if (DEBUG) log("Failed to close " + jar.name() + ": " + e);
+            }
+        }
+        opened.clear();
+        if (DEBUG) log("Closed " + closed + " unused jars");
+    }
+
+    /**
+     * Defines the runtime layer, and makes its service index the one {@link BootstrapServices} uses.
+     */
+    private static ModuleLayer defineModules(Configuration cfg, ModuleLayer parent, Function<String, ClassLoader> loaders, Map<String, List<BootstrapServices.Provider>> services) {
+        var layer = ModuleLayer.defineModules(cfg, List.of(parent), loaders).layer();
+        BootstrapServices.install(layer, services);
+        return layer;
+    }
+
+    /**
+     * Decides which class loader each runtime module is given, based on the {@code bsl.loaders} strategy:
+     * <ul>
+     *   <li>{@code single}: Every module shares one loader, the default.</li>
+     *   <li>{@code module}: Every module gets its own loader.</li>
+     *   <li>{@code group}: Modules are grouped by the {@code bsl.loaders.groups} property, a semicolon separated list of
+     *       comma separated module names, then by their {@code Forge-Module-Group} manifest attribute.
+     *       Anything else shares a default loader.</li>
+     * </ul>
+     * @return Module name to group name
+     */
+    protected Map<String, String> loaderGroups(List<SecureJar> modules) {
+        var explicit = new HashMap<String, String>();
+        if (LOADER_GROUPS != null) {
+            for (var group : LOADER_GROUPS.split(";")) {
+                var names = group.split(",");
+                for (var name : names)
+                    explicit.put(name.trim(), names[0].trim());
+            }
+        }
+
+        var ret = new HashMap<String, String>();
+        for (var jar : modules) {
+            var group = switch (LOADERS) {
+                case "module" -> jar.name();
+                case "group" -> {
+                    var name = explicit.get(jar.name());
+                    if (name == null)
+                        name = jar.moduleDataProvider().getManifest().getMainAttributes().getValue(MODULE_GROUP);
+                    yield name == null ? "default" : name;
+                }
+                default -> throw new IllegalArgumentException("Unknown bsl.loaders strategy: " + LOADERS);
+            };
+            ret.put(jar.name(), group);
+        }
+        return ret;
     }
 
     protected List<SecureJar> selectRuntimeModules(List<Path[]> classpath) {
-        var jars = new ArrayList<SecureJar>();
-        for (var paths : classpath)
-            jars.add(secureJar(paths));
+        var jars = runtimeJars(classpath);
 
         var ret = new ArrayList<SecureJar>();
         var bootlayer = getClass().getModule().getLayer();
@@ -219,6 +570,64 @@ public class Bootstrap {
         return ret;
     }
 
+    /**
+     * Files that {@link #selectRuntimeModules(List)} looks for using {@link SecureJar.ModuleDataProvider#findFile(String)}.
+     * Whether they exist is cached, so that lazy jars don't need to be opened to answer.
+     */
+    protected Set<String> probedFiles() {
+        return Set.of();
+    }
+
+    /**
+     * Builds a SecureJar for every classpath entry, in order.
+     * When lazy jars are enabled, single jar files that we have cached info for are not opened until their contents are needed.
+     */
+    protected List<SecureJar> runtimeJars(List<Path[]> classpath) {
+        directories = DirectoryIndex.enabled() ? DirectoryIndex.load() : null;
+        var ret = !LAZY || !LaunchCache.enabled() ? Pipeline.map(classpath, this::scanJar) : lazyJars(classpath);
+        if (directories != null)
+            directories.save();
+        directories = null;
+        opened.addAll(ret);
+        if (EXPORT != null)
+            classpathJars = ret;
+        return ret;
+    }
+
+    private List<SecureJar> lazyJars(List<Path[]> classpath) {
+        var cache = JarInfoCache.load();
+        var probes = probedFiles();
+        var ret = Pipeline.map(classpath, paths -> {
+            // Merged entries and directories don't have a single file we can track, so always open them
+            if (paths.length != 1 || BootstrapIO.isDirectory(paths[0]))
+                return scanJar(paths);
+
+            var info = cache.get(paths[0], probes);
+            if (info != null)
+                return new LazyJar(paths[0], info);
+
+            var jar = scanJar(paths);
+            cache.put(paths[0], jar, probes);
+            return jar;
+        });
+        cache.save();
+
+        if (DEBUG)
+            log("Lazy jars: " + ret.stream().filter(LazyJar.class::isInstance).count() + '/' + classpath.size());
+        return ret;
+    }
+
+    /*
+     * Builds the jar and its descriptor, which is where SecureJar scans for packages.
+     * With the pipeline enabled this runs on a worker, so the scan happens there instead of whenever the
+     * descriptor is first asked for on the main thread.
+     */
+    private SecureJar scanJar(Path[] paths) {
+        var jar = secureJar(paths);
+        jar.moduleDataProvider().descriptor();
+        return jar;
+    }
+
     protected static String pad(int width, String str) {
         return str + " ".repeat(width - str.length());
     }
@@ -232,6 +641,7 @@ public class Bootstrap {
             log(prefix + paths[x]);
     }
 
+    @SuppressWarnings("try")
     protected SecureJar secureJar(Path[] paths) {
         var ordered = paths;
         if (paths.length > 1) {
@@ -240,7 +650,18 @@ public class Bootstrap {
             for (int x = 0; x < paths.length; x++)
                 ordered[x] = paths[paths.length - x - 1];
         }
-        return SecureJar.from(ordered);
+        try (var phase = BootstrapIO.phase("SecureJar")) {
+            // SecureJar does its own I/O, so all we can count is that it opened these
+            for (var path : ordered)
+                BootstrapIO.opened(path);
+            // Exploded directories get their packages from our index instead of SecureJar walking every file
+            var index = directories;
+            if (index != null && Arrays.stream(ordered).allMatch(p -> p.getFileSystem() == FileSystems.getDefault() && BootstrapIO.isDirectory(p))) {
+                var roots = ordered;
+                return SecureJar.from(jar -> index.metadata(jar, roots), roots);
+            }
+            return SecureJar.from(ordered);
+        }
     }
 
     private static Method findMethod(Class<?> cls, String name, Class<?>... parameterTypes) {
@@ -258,19 +679,32 @@ public class Bootstrap {
         var paths = new ArrayList<Path>();
         for (var part : parts) {
             var path = new File(part).getCanonicalFile().toPath();
-            if (!Files.exists(path)) {
+            if (!BootstrapIO.exists(path)) {
                 //if (DEBUG) log("Skipping missing: " + path);
                 continue;
             }
-            if (Files.isDirectory(path) && Files.list(path).findAny().isEmpty()) {
-                //if (DEBUG) log("Skipping empty:   " + path);
-                continue;
+            if (BootstrapIO.isDirectory(path)) {
+                try (var files = BootstrapIO.list(path)) {
+                    if (files.findAny().isEmpty()) {
+                        //if (DEBUG) log("Skipping empty:   " + path);
+                        continue;
+                    }
+                }
             }
             paths.add(path);
         }
         return paths;
     }
 
+    // Set by the shim when it was started from a library pack, the libraries are after everything else like they would be if they were on the classpath
+    private static List<Path> withPack(List<Path> classpath) throws IOException {
+        var pack = PackFileSystem.open(Path.of(PACK));
+        if (DEBUG) log("Using library pack: " + pack.getPackFile());
+        var ret = new ArrayList<Path>(classpath);
+        ret.addAll(pack.libraries());
+        return ret;
+    }
+
     @SuppressWarnings("unchecked")
     private static <E extends Throwable, R> R sneak(Exception exception) throws E {
         throw (E)exception;
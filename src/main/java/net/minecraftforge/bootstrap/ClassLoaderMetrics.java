@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.bootstrap;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counters for one instrumented class loader, enabled with {@code bsl.metrics}.
+ *
+ * All counters are {@link LongAdder}s so that threads loading classes at the same time don't fight over them.
+ * Class timing is exclusive: defining a class often loads its super types, that time is counted against
+ * those classes instead of the one that triggered them.
+ */
+final class ClassLoaderMetrics implements ClassLoaderMetricsMXBean {
+    static final boolean ENABLED = Boolean.getBoolean("bsl.metrics");
+    private static final String UNKNOWN = "<none>";
+    private static final ThreadLocal<Frames> FRAMES = ThreadLocal.withInitial(Frames::new);
+
+    private final String loader;
+    private final ConcurrentHashMap<String, Counters> modules = new ConcurrentHashMap<>();
+
+    private ClassLoaderMetrics(String loader) {
+        this.loader = loader;
+    }
+
+    /**
+     * Creates and registers the metrics for a loader, or returns null if metrics are disabled.
+     */
+    static ClassLoaderMetrics create(String loader) {
+        if (!ENABLED)
+            return null;
+
+        var ret = new ClassLoaderMetrics(loader);
+        try {
+            var server = ManagementFactory.getPlatformMBeanServer();
+            var name = new ObjectName("net.minecraftforge.bootstrap:type=ClassLoader,name=" + ObjectName.quote(loader));
+            try {
+                server.registerMBean(ret, name);
+            } catch (InstanceAlreadyExistsException e) {
+                // Replace anything left over from a previous launch in this JVM
+                server.unregisterMBean(name);
+                server.registerMBean(ret, name);
+            }
+        } catch (JMException e) {
+            if (Bootstrap.DEBUG)
+                Bootstrap.log("Failed to register metrics for " + loader + ": " + e);
+        }
+        return ret;
+    }
+
+    private Counters counters(String module) {
+        return modules.computeIfAbsent(module == null ? UNKNOWN : module, k -> new Counters());
+    }
+
+    /**
+     * Starts timing a class load on this thread, must be paired with {@link #end(String, long, boolean)}
+     */
+    long begin() {
+        FRAMES.get().push();
+        return System.nanoTime();
+    }
+
+    /**
+     * Adds the size of a class file to the class currently being loaded on this thread
+     */
+    void bytes(int length) {
+        FRAMES.get().bytes(length);
+    }
+
+    void end(String module, long start, boolean defined) {
+        var time = System.nanoTime() - start;
+        var frames = FRAMES.get();
+        var self = time - frames.children();
+        var bytes = frames.pop(time);
+        if (!defined)
+            return;
+
+        var counters = counters(module);
+        counters.classes.increment();
+        counters.bytes.add(bytes);
+        counters.time.add(self);
+    }
+
+    void resource(String module, boolean found) {
+        var counters = counters(found ? module : UNKNOWN);
+        counters.resources.increment();
+        if (!found)
+            counters.misses.increment();
+    }
+
+    @Override
+    public String getLoaderName() {
+        return loader;
+    }
+
+    @Override
+    public long getClassesDefined() {
+        return modules.values().stream().mapToLong(c -> c.classes.sum()).sum();
+    }
+
+    @Override
+    public long getBytesRead() {
+        return modules.values().stream().mapToLong(c -> c.bytes.sum()).sum();
+    }
+
+    @Override
+    public long getDefineTimeNanos() {
+        return modules.values().stream().mapToLong(c -> c.time.sum()).sum();
+    }
+
+    @Override
+    public long getResourceLookups() {
+        return modules.values().stream().mapToLong(c -> c.resources.sum()).sum();
+    }
+
+    @Override
+    public long getResourceMisses() {
+        return modules.values().stream().mapToLong(c -> c.misses.sum()).sum();
+    }
+
+    @Override
+    public List<ModuleMetrics> getModules() {
+        var ret = new ArrayList<ModuleMetrics>(modules.size());
+        modules.forEach((name, c) -> ret.add(new ModuleMetrics(name, c.classes.sum(), c.bytes.sum(), c.time.sum(), c.resources.sum(), c.misses.sum())));
+        ret.sort((a, b) -> Long.compare(b.getDefineTimeNanos(), a.getDefineTimeNanos()));
+        return ret;
+    }
+
+    @Override
+    public String toString() {
+        return loader + "[classes=" + getClassesDefined() + ", bytes=" + getBytesRead() + ", time=" + (getDefineTimeNanos() / 1_000_000) +
+            "ms, resources=" + getResourceLookups() + ", misses=" + getResourceMisses() + ']';
+    }
+
+    private static final class Counters {
+        private final LongAdder classes = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder time = new LongAdder();
+        private final LongAdder resources = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+    }
+
+    /*
+     * Tracks nested class loads on a single thread, so the time spent loading
+     * super classes can be taken out of the class that caused them to load.
+     */
+    private static final class Frames {
+        private long[] children = new long[16];
+        private long[] bytes = new long[16];
+        private int depth = 0;
+
+        private void push() {
+            depth++;
+            if (depth == children.length) {
+                children = Arrays.copyOf(children, depth * 2);
+                bytes = Arrays.copyOf(bytes, depth * 2);
+            }
+            children[depth] = 0;
+            bytes[depth] = 0;
+        }
+
+        private long children() {
+            return children[depth];
+        }
+
+        private void bytes(int length) {
+            bytes[depth] += length;
+        }
+
+        private long pop(long time) {
+            var ret = bytes[depth];
+            depth--;
+            children[depth] += time;
+            return ret;
+        }
+    }
+}
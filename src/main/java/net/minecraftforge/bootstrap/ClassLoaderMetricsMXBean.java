@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.bootstrap;
+
+import java.util.List;
+
+/**
+ * Class loading statistics for one of the class loaders Bootstrap created.
+ * Registered as {@code net.minecraftforge.bootstrap:type=ClassLoader,name=<loader name>} when {@code bsl.metrics} is set.
+ */
+public interface ClassLoaderMetricsMXBean {
+    String getLoaderName();
+
+    long getClassesDefined();
+
+    /** Size of the class files we defined, after any transformation */
+    long getBytesRead();
+
+    /** Time spent finding, reading and defining classes, not including time spent loading other classes while doing so */
+    long getDefineTimeNanos();
+
+    long getResourceLookups();
+
+    long getResourceMisses();
+
+    List<ModuleMetrics> getModules();
+
+    /**
+     * Snapshot of the counters for a single module, or classpath entry for loaders that don't have modules.
+     */
+    public static final class ModuleMetrics {
+        private final String name;
+        private final long classesDefined;
+        private final long bytesRead;
+        private final long defineTimeNanos;
+        private final long resourceLookups;
+        private final long resourceMisses;
+
+        public ModuleMetrics(String name, long classesDefined, long bytesRead, long defineTimeNanos, long resourceLookups, long resourceMisses) {
+            this.name = name;
+            this.classesDefined = classesDefined;
+            this.bytesRead = bytesRead;
+            this.defineTimeNanos = defineTimeNanos;
+            this.resourceLookups = resourceLookups;
+            this.resourceMisses = resourceMisses;
+        }
+
+        public String getName()            { return name; }
+        public long getClassesDefined()    { return classesDefined; }
+        public long getBytesRead()         { return bytesRead; }
+        public long getDefineTimeNanos()   { return defineTimeNanos; }
+        public long getResourceLookups()   { return resourceLookups; }
+        public long getResourceMisses()    { return resourceMisses; }
+
+        @Override
+        public String toString() {
+            return name + "[classes=" + classesDefined + ", bytes=" + bytesRead + ", time=" + (defineTimeNanos / 1_000_000) + "ms, resources=" + resourceLookups + ", misses=" + resourceMisses + ']';
+        }
+    }
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.bootstrap;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.module.ModuleDescriptor;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.minecraftforge.bootstrap.api.BootstrapIO;
+import net.minecraftforge.bootstrap.api.BootstrapLog;
+import net.minecraftforge.bootstrap.api.Util;
+
+/**
+ * Finds jars that are on the classpath more than once, before any modifiers or module scanning sees them.
+ * Controlled by the {@code bsl.dedupe} system property:
+ * <ul>
+ *   <li>{@code off}: Do nothing, the default.</li>
+ *   <li>{@code report}: Log duplicates, but keep everything.</li>
+ *   <li>{@code first}: Keep the first entry for every module, like the classpath would.</li>
+ *   <li>{@code newest}: Keep the entry with the highest module version, ties go to the first one.</li>
+ *   <li>{@code fail}: Drop identical copies, and fail the launch if a module has different versions.</li>
+ * </ul>
+ * Two jars are the same module if they have the same module name, and identical if they have the same size and
+ * central directory. The central directory has the size and CRC of every entry, so it is a cheap stand in for hashing
+ * the whole file. Results are cached in {@code bsl.cache} by the file's identity.
+ *
+ * Directories are never considered duplicates.
+ */
+final class ClasspathDeduper {
+    static final String POLICY = System.getProperty("bsl.dedupe", "off");
+    private static final String FILE = "dedupe.bin";
+    private static final int VERSION = 1;
+    private static final int EOCD = 0x06054b50;
+    private static final int EOCD_SIZE = 22;
+
+    private record Info(String identity, String name, String version, byte[] fingerprint) {}
+
+    private ClasspathDeduper() {}
+
+    static boolean enabled() {
+        return !"off".equals(POLICY);
+    }
+
+    static List<Path> dedupe(List<Path> classpath) {
+        if (!enabled())
+            return classpath;
+        if (!List.of("report", "first", "newest", "fail").contains(POLICY))
+            throw new IllegalArgumentException("Unknown bsl.dedupe policy: " + POLICY);
+
+        var cache = LaunchCache.read(FILE, VERSION, ClasspathDeduper::readCache);
+        // Only keep what is still on the classpath, so the cache doesn't grow forever
+        var next = new HashMap<String, Info>();
+        var dirty = cache == null;
+
+        var infos = new Info[classpath.size()];
+        for (int x = 0; x < infos.length; x++) {
+            var path = classpath.get(x);
+            if (BootstrapIO.isDirectory(path))
+                continue;
+
+            var key = path.toString();
+            var identity = LaunchCache.identity(path);
+            var info = cache == null ? null : cache.get(key);
+            if (info == null || !info.identity.equals(identity)) {
+                info = probe(path, identity);
+                dirty = true;
+            }
+            next.put(key, info);
+            infos[x] = info;
+        }
+
+        if (dirty || next.size() != cache.size())
+            LaunchCache.write(FILE, VERSION, out -> writeCache(out, next));
+
+        var drop = new String[infos.length];
+        var identical = new HashMap<String, Integer>();
+        var modules = new LinkedHashMap<String, List<Integer>>();
+        for (int x = 0; x < infos.length; x++) {
+            var info = infos[x];
+            if (info == null)
+                continue;
+
+            var prev = identical.putIfAbsent(hex(info.fingerprint), x);
+            if (prev != null) {
+                drop[x] = "identical to " + classpath.get(prev);
+                continue;
+            }
+            if (info.name != null)
+                modules.computeIfAbsent(info.name, k -> new ArrayList<>()).add(x);
+        }
+
+        var conflicts = new ArrayList<String>();
+        for (var entry : modules.entrySet()) {
+            var indexes = entry.getValue();
+            if (indexes.size() == 1)
+                continue;
+
+            int keep = indexes.get(0);
+            if ("newest".equals(POLICY)) {
+                for (var idx : indexes) {
+                    if (compare(infos[idx].version, infos[keep].version) > 0)
+                        keep = idx;
+                }
+            } else if ("fail".equals(POLICY)) {
+                var sb = new StringBuilder(entry.getKey()).append(':');
+                for (var idx : indexes)
+                    sb.append("\n    ").append(infos[idx].version).append(' ').append(classpath.get(idx));
+                conflicts.add(sb.toString());
+                continue;
+            }
+
+            for (var idx : indexes) {
+                if (idx != keep)
+                    drop[idx] = "module " + entry.getKey() + ' ' + infos[idx].version + " superseded by " + infos[keep].version + ' ' + classpath.get(keep);
+            }
+        }
+
+        if (!conflicts.isEmpty())
+            throw new IllegalStateException("Found multiple versions of the same module on the classpath:\n" + String.join("\n", conflicts));
+
+        var ret = new ArrayList<Path>(classpath.size());
+        for (int x = 0; x < drop.length; x++) {
+            var path = classpath.get(x);
+            if (drop[x] == null) {
+                ret.add(path);
+            } else if ("report".equals(POLICY)) {
+                BootstrapLog.info("Duplicate classpath entry: " + path + " (" + drop[x] + ')');
+                ret.add(path);
+            } else {
+                BootstrapLog.info("Dropped duplicate classpath entry: " + path + " (" + drop[x] + ')');
+            }
+        }
+        return ret;
+    }
+
+    // Unparsable or missing versions sort before everything else
+    private static int compare(String a, String b) {
+        var va = parse(a);
+        var vb = parse(b);
+        if (va == null || vb == null)
+            return va == null ? (vb == null ? 0 : -1) : 1;
+        return va.compareTo(vb);
+    }
+
+    private static ModuleDescriptor.Version parse(String version) {
+        if (version == null)
+            return null;
+        try {
+            return ModuleDescriptor.Version.parse(version);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static Info probe(Path path, String identity) {
+        var module = Util.findAutomaticModule(path);
+        try {
+            return new Info(identity, module == null ? null : module.name(), module == null ? null : module.version(), fingerprint(path));
+        } catch (IOException e) {
+            return sneak(e);
+        }
+    }
+
+    /*
+     * Hashes the size and central directory of a zip file. Falls back to hashing the whole file if we can't find
+     * the central directory, which includes zip64 files since they are rare and big enough that it doesn't matter.
+     */
+    static byte[] fingerprint(Path path) throws IOException {
+        BootstrapIO.opened(path);
+        try (var channel = Files.newByteChannel(path)) {
+            long size = channel.size();
+            int tail = (int)Math.min(size, 0xFFFF + EOCD_SIZE);
+            var buf = ByteBuffer.allocate(tail).order(ByteOrder.LITTLE_ENDIAN);
+            channel.position(size - tail);
+            while (buf.hasRemaining()) {
+                if (channel.read(buf) == -1)
+                    break;
+            }
+            BootstrapIO.read(path, buf.position());
+
+            for (int x = buf.position() - EOCD_SIZE; x >= 0; x--) {
+                if (buf.getInt(x) != EOCD)
+                    continue;
+
+                long cdSize = buf.getInt(x + 12) & 0xFFFFFFFFL;
+                long cdOffset = buf.getInt(x + 16) & 0xFFFFFFFFL;
+                if (cdOffset == 0xFFFFFFFFL || cdOffset + cdSize > size)
+                    break;
+
+                var digest = sha256();
+                digest.update(ByteBuffer.allocate(Long.BYTES).putLong(0, size));
+                digest.update(centralDirectory(channel, cdOffset, cdSize));
+                BootstrapIO.read(path, cdSize);
+                return digest.digest();
+            }
+        }
+        return LaunchCache.sha256(path);
+    }
+
+    // Libraries in the shim's pack are already mapped, and their channel isn't a FileChannel
+    private static ByteBuffer centralDirectory(SeekableByteChannel channel, long offset, long size) throws IOException {
+        if (channel instanceof FileChannel file)
+            return file.map(FileChannel.MapMode.READ_ONLY, offset, size);
+
+        var ret = ByteBuffer.allocate((int)size);
+        channel.position(offset);
+        while (ret.hasRemaining() && channel.read(ret) != -1);
+        return ret.flip();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // Every JVM is required to have SHA-256
+        }
+    }
+
+    private static String hex(byte[] data) {
+        var sb = new StringBuilder(data.length * 2);
+        for (var b : data)
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        return sb.toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E extends Throwable, R> R sneak(Exception exception) throws E {
+        throw (E)exception;
+    }
+
+    /* ======================================================================
+     *                             Serialization
+     * ======================================================================
+     */
+
+    private static Map<String, Info> readCache(DataInputStream in) throws IOException {
+        var ret = new HashMap<String, Info>();
+        int count = in.readInt();
+        for (int x = 0; x < count; x++) {
+            var path = in.readUTF();
+            var identity = in.readUTF();
+            var name = in.readBoolean() ? in.readUTF() : null;
+            var version = in.readBoolean() ? in.readUTF() : null;
+            var fingerprint = LaunchCache.readBytes(in);
+            ret.put(path, new Info(identity, name, version, fingerprint));
+        }
+        return ret;
+    }
+
+    private static void writeCache(DataOutputStream out, Map<String, Info> cache) throws IOException {
+        out.writeInt(cache.size());
+        for (var entry : cache.entrySet()) {
+            var info = entry.getValue();
+            out.writeUTF(entry.getKey());
+            out.writeUTF(info.identity);
+            writeNullable(out, info.name);
+            writeNullable(out, info.version);
+            LaunchCache.writeBytes(out, info.fingerprint);
+        }
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null)
+            out.writeUTF(value);
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.bootstrap;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.module.ModuleDescriptor;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import cpw.mods.jarhandling.JarMetadata;
+import cpw.mods.jarhandling.SecureJar;
+import net.minecraftforge.bootstrap.api.BootstrapIO;
+
+/**
+ * Package index for exploded directories, like the {@code build/classes} and {@code build/resources} folders in dev.
+ * SecureJar walks every file in them to find their packages, which is slow with tens of thousands of assets.
+ *
+ * We remember every directory's modification time, whether it has classes directly in it, and its subdirectories.
+ * A directory's time only changes when something is added, removed, or renamed directly in it, so when it
+ * matches the listing is reused. Unchanged trees cost one stat per directory instead of one per file.
+ * Directories changed within the last few seconds are always listed again next time, as a change in the same
+ * tick as our listing wouldn't move the time.
+ */
+final class DirectoryIndex {
+    private static final String FILE = "directories.bin";
+    private static final int VERSION = 1;
+    private static final long RACY = 2000;
+    private static final String MODULE_INFO = "module-info.class";
+
+    record Dir(long modified, boolean classes, List<String> children) {}
+
+    private final Map<String, Map<String, Dir>> cache;
+    // Filled from the pipeline's threads when it is enabled
+    private final Map<String, Map<String, Dir>> results = Collections.synchronizedMap(new TreeMap<>());
+    private volatile boolean dirty = false;
+
+    private DirectoryIndex(Map<String, Map<String, Dir>> cache) {
+        this.cache = cache;
+    }
+
+    static boolean enabled() {
+        return LaunchCache.enabled();
+    }
+
+    static DirectoryIndex load() {
+        var cache = LaunchCache.read(FILE, VERSION, DirectoryIndex::readCache);
+        return new DirectoryIndex(cache == null ? Map.of() : cache);
+    }
+
+    void save() {
+        // Roots we didn't see this launch are dropped, same as JarInfoCache
+        if (dirty || !results.keySet().equals(cache.keySet()))
+            LaunchCache.write(FILE, VERSION, out -> writeCache(out, results));
+    }
+
+    /**
+     * Same metadata SecureJar would build for the directories, except the packages come from our index instead of
+     * walking the jar. Only the package list is ours, the name, version, and providers are still SecureJar's.
+     */
+    JarMetadata metadata(SecureJar jar, Path[] paths) {
+        var packages = new HashSet<String>();
+        for (var path : paths)
+            packages.addAll(packages(path));
+
+        var data = jar.moduleDataProvider();
+        var moduleInfo = data.open(MODULE_INFO);
+        if (moduleInfo.isPresent()) {
+            try (var in = moduleInfo.get()) {
+                var descriptor = ModuleDescriptor.read(in, () -> packages);
+                return new Metadata(descriptor.name(), descriptor.rawVersion().orElse(null), descriptor);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        var providers = jar.getProviders();
+        var candidate = JarMetadata.fromFileName(paths[0], packages, providers);
+        var name = data.getManifest().getMainAttributes().getValue("Automatic-Module-Name");
+        if (name == null)
+            return candidate;
+
+        var builder = ModuleDescriptor.newAutomaticModule(name).packages(packages);
+        if (candidate.version() != null)
+            builder.version(candidate.version());
+        for (var provider : providers) {
+            if (!provider.providers().isEmpty())
+                builder.provides(provider.serviceName(), provider.providers());
+        }
+        return new Metadata(name, candidate.version(), builder.build());
+    }
+
+    private record Metadata(String name, String version, ModuleDescriptor descriptor) implements JarMetadata {}
+
+    /**
+     * @return Every package with a class in this directory, updating the index for anything that changed
+     */
+    Set<String> packages(Path root) {
+        var key = root.toAbsolutePath().toString();
+        var old = cache.getOrDefault(key, Map.of());
+        var dirs = new HashMap<String, Dir>();
+        var ret = new HashSet<String>();
+        try {
+            scan(root, "", old, dirs, ret, System.currentTimeMillis());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        results.put(key, dirs);
+        return ret;
+    }
+
+    private void scan(Path root, String relative, Map<String, Dir> old, Map<String, Dir> dirs, Set<String> packages, long now) throws IOException {
+        var dir = relative.isEmpty() ? root : root.resolve(relative);
+        BootstrapIO.stat(dir);
+        var modified = Files.getLastModifiedTime(dir, LinkOption.NOFOLLOW_LINKS).toMillis();
+
+        var entry = old.get(relative);
+        if (entry == null || entry.modified != modified) {
+            entry = list(dir, modified >= now - RACY ? -1 : modified);
+            dirty = true;
+        }
+        dirs.put(relative, entry);
+
+        // Classes in the root are in the unnamed package, which a module can't have
+        if (entry.classes && !relative.isEmpty() && !relative.equals("META-INF") && !relative.startsWith("META-INF/"))
+            packages.add(relative.replace('/', '.'));
+
+        for (var child : entry.children)
+            scan(root, relative.isEmpty() ? child : relative + '/' + child, old, dirs, packages, now);
+    }
+
+    private static Dir list(Path dir, long modified) throws IOException {
+        var classes = false;
+        var children = new ArrayList<String>();
+        try (var stream = Files.newDirectoryStream(dir)) {
+            for (var path : stream) {
+                var name = path.getFileName().toString();
+                // Saves a stat for every class, nobody names a directory Foo.class
+                if (name.endsWith(".class")) {
+                    if (!name.equals(MODULE_INFO))
+                        classes = true;
+                    continue;
+                }
+                BootstrapIO.stat(path);
+                if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS))
+                    children.add(name);
+            }
+        }
+        Collections.sort(children);
+        return new Dir(modified, classes, List.copyOf(children));
+    }
+
+    /* ======================================================================
+     *                             Serialization
+     * ======================================================================
+     */
+
+    private static Map<String, Map<String, Dir>> readCache(DataInputStream in) throws IOException {
+        var ret = new HashMap<String, Map<String, Dir>>();
+        int roots = in.readInt();
+        for (int x = 0; x < roots; x++) {
+            var key = in.readUTF();
+            int count = in.readInt();
+            var dirs = new HashMap<String, Dir>(count);
+            for (int y = 0; y < count; y++) {
+                var relative = in.readUTF();
+                var modified = in.readLong();
+                var classes = in.readBoolean();
+                int size = in.readInt();
+                var children = new ArrayList<String>(size);
+                for (int z = 0; z < size; z++)
+                    children.add(in.readUTF());
+                dirs.put(relative, new Dir(modified, classes, children));
+            }
+            ret.put(key, dirs);
+        }
+        return ret;
+    }
+
+    private static void writeCache(DataOutputStream out, Map<String, Map<String, Dir>> roots) throws IOException {
+        out.writeInt(roots.size());
+        for (var root : roots.entrySet()) {
+            out.writeUTF(root.getKey());
+            out.writeInt(root.getValue().size());
+            for (var entry : root.getValue().entrySet()) {
+                var dir = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeLong(dir.modified);
+                out.writeBoolean(dir.classes);
+                out.writeInt(dir.children.size());
+                for (var child : dir.children)
+                    out.writeUTF(child);
+            }
+        }
+    }
+}
@@ -7,6 +7,7 @@ package net.minecraftforge.bootstrap;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 import java.util.jar.Attributes;
 import cpw.mods.jarhandling.SecureJar;
 
@@ -19,11 +20,21 @@ public class ForgeBootstrap extends Bootstrap {
         new ForgeBootstrap().start(args);
     }
 
+    /**
+     * Called by the shim instead of {@link #main(String[])}, with the classpath it has already found and checked.
+     */
+    public static void main(String[] args, List<Path> classpath) throws Exception {
+        new ForgeBootstrap().start(args, classpath);
+    }
+
+    @Override
+    protected Set<String> probedFiles() {
+        return Set.of(MODS_TOML, MINECRAFT);
+    }
+
     @Override
     protected List<SecureJar> selectRuntimeModules(List<Path[]> classpath) {
-        var jars = new ArrayList<SecureJar>(classpath.size());
-        for (var paths : classpath)
-            jars.add(secureJar(paths));
+        var jars = runtimeJars(classpath);
 
         var ret = new ArrayList<SecureJar>();
         var bootlayer = getClass().getModule().getLayer();
@@ -0,0 +1,562 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.bootstrap;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.CodeSigner;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.ZipFile;
+
+/**
+ * Replacement for the URLClassLoader we used to build when the classpath was modified. It still is one, so anything
+ * that looks at its URLs, or adds to them, keeps working, but it never uses the URLClassLoader's own search.
+ *
+ * A URLClassLoader checks every entry in order until it finds what it's looking for, which is a lot of zip lookups
+ * with hundreds of entries. Instead we index which entries contain each directory, and lookups only touch entries that
+ * can possibly have the file, in the same first wins order as the classpath. Entries are opened and indexed lazily, in
+ * classpath order, only once a lookup hasn't found its file in the ones before them. So a lookup never indexes past the
+ * entry that has the file, and only misses and {@code getResources} index everything.
+ */
+class IndexedClassLoader extends URLClassLoader {
+    static {
+        ClassLoader.registerAsParallelCapable();
+    }
+
+    private static final int[] EMPTY = new int[0];
+
+    // Both only grow, and only under the index lock. Arrays in the map are replaced, never changed.
+    private volatile Entry[] entries;
+    private final Map<String, int[]> packages = new HashMap<>();
+    private volatile int indexed = 0;
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder probes = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final ClassLoaderMetrics metrics;
+
+    IndexedClassLoader(String name, List<Path> roots, ClassLoader parent, ClassLoaderMetrics metrics) throws IOException {
+        super(name, urls(roots), parent);
+        this.metrics = metrics;
+        var entries = new Entry[roots.size()];
+        for (int x = 0; x < entries.length; x++)
+            entries[x] = new Entry(roots.get(x));
+        this.entries = entries;
+    }
+
+    private static URL[] urls(List<Path> roots) throws MalformedURLException {
+        var ret = new URL[roots.size()];
+        for (int x = 0; x < ret.length; x++)
+            ret[x] = roots.get(x).toUri().toURL();
+        return ret;
+    }
+
+    /** Number of classes and resources we've been asked to find */
+    public long getLookups() {
+        return lookups.sum();
+    }
+
+    /** Number of entries we looked in, a URLClassLoader would be every entry before the one that has it */
+    public long getProbes() {
+        return probes.sum();
+    }
+
+    /** Number of lookups that weren't in any entry */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public String toString() {
+        int size;
+        synchronized (packages) {
+            size = packages.size();
+        }
+        return getName() + "[entries=" + entries.length + ", indexed=" + indexed + ", packages=" + size +
+            ", lookups=" + getLookups() + ", probes=" + getProbes() + ", misses=" + getMisses() + ']';
+    }
+
+    // Anything that can add a URL expects it to be searched last, which is where it goes in the index too
+    @Override
+    protected void addURL(URL url) {
+        Path path;
+        try {
+            path = Path.of(url.toURI());
+        } catch (URISyntaxException | IllegalArgumentException | FileSystemNotFoundException e) {
+            throw new IllegalArgumentException("Only URLs of files can be added to " + getName() + ": " + url, e);
+        }
+        synchronized (packages) {
+            var entries = Arrays.copyOf(this.entries, this.entries.length + 1);
+            entries[entries.length - 1] = new Entry(path);
+            this.entries = entries;
+            super.addURL(url);
+        }
+    }
+
+    private static String directory(String path) {
+        int idx = path.lastIndexOf('/');
+        return idx == -1 ? "" : path.substring(0, idx);
+    }
+
+    /**
+     * The first entry that has the file, in classpath order, indexing more entries only if the indexed ones don't have it.
+     * @param probe Looks for the file in one entry, null if it isn't there
+     */
+    private <T> T find(String path, Function<Entry, T> probe) {
+        lookups.increment();
+        var dir = directory(path);
+        int checked = 0;
+        while (true) {
+            int[] candidates;
+            int limit;
+            synchronized (packages) {
+                candidates = packages.getOrDefault(dir, EMPTY);
+                limit = indexed;
+            }
+            for (var idx : candidates) {
+                if (idx < checked)
+                    continue;
+                probes.increment();
+                var ret = probe.apply(entries[idx]);
+                if (ret != null)
+                    return ret;
+            }
+            checked = limit;
+            if (checked >= entries.length || !index(checked))
+                break;
+        }
+        misses.increment();
+        return null;
+    }
+
+    /*
+     * Indexes the entry at idx if nobody else has, false if there are no more entries.
+     * The entry is opened outside the lock, so lookups in what is already indexed don't wait on its I/O.
+     * Threads that want the same entry wait on the entry instead, which only opens once.
+     */
+    private boolean index(int idx) {
+        Entry entry;
+        synchronized (packages) {
+            if (indexed > idx)
+                return true;
+            if (idx >= entries.length)
+                return false;
+            entry = entries[idx];
+        }
+
+        var dirs = entry.directories();
+
+        synchronized (packages) {
+            if (indexed > idx)
+                return true;
+            for (var dir : dirs) {
+                var old = packages.getOrDefault(dir, EMPTY);
+                var lst = Arrays.copyOf(old, old.length + 1);
+                lst[old.length] = idx;
+                packages.put(dir, lst);
+            }
+            indexed = idx + 1;
+            return true;
+        }
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        if (metrics == null)
+            return findClassImpl(name);
+
+        var start = metrics.begin();
+        Class<?> ret = null;
+        try {
+            ret = findClassImpl(name);
+            return ret;
+        } finally {
+            metrics.end(ret == null ? null : ret.getProtectionDomain().getCodeSource().getLocation().getPath(), start, ret != null);
+        }
+    }
+
+    private record Found(Entry entry, byte[] data) {}
+
+    private Class<?> findClassImpl(String name) throws ClassNotFoundException {
+        var path = name.replace('.', '/').concat(".class");
+        Found found;
+        try {
+            found = find(path, entry -> {
+                try {
+                    var data = entry.read(path);
+                    return data == null ? null : new Found(entry, data);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw new ClassNotFoundException(name, e.getCause());
+        }
+        if (found == null)
+            throw new ClassNotFoundException(name);
+
+        int dot = name.lastIndexOf('.');
+        if (dot != -1)
+            definePackage(name.substring(0, dot), found.entry);
+
+        if (metrics != null)
+            metrics.bytes(found.data.length);
+        var source = new CodeSource(found.entry.url, found.entry.signers(path));
+        return defineClass(name, found.data, 0, found.data.length, source);
+    }
+
+    private record Resource(Entry entry, URL url) {}
+
+    @Override
+    public URL findResource(String name) {
+        var ret = find(name, entry -> {
+            var url = entry.find(name);
+            return url == null ? null : new Resource(entry, url);
+        });
+        if (metrics != null)
+            metrics.resource(ret == null ? null : ret.entry.url.getPath(), ret != null);
+        return ret == null ? null : ret.url;
+    }
+
+    @Override
+    public Enumeration<URL> findResources(String name) throws IOException {
+        lookups.increment();
+        while (index(indexed));
+
+        int[] candidates;
+        synchronized (packages) {
+            candidates = packages.getOrDefault(directory(name), EMPTY);
+        }
+        var ret = new ArrayList<URL>();
+        for (var idx : candidates) {
+            probes.increment();
+            var url = entries[idx].find(name);
+            if (url != null)
+                ret.add(url);
+        }
+        if (ret.isEmpty())
+            misses.increment();
+        return Collections.enumeration(ret);
+    }
+
+    private void definePackage(String name, Entry entry) {
+        if (getDefinedPackage(name) != null)
+            return;
+
+        var mf = entry.manifest();
+        try {
+            if (mf == null) {
+                definePackage(name, null, null, null, null, null, null, null);
+            } else {
+                var section = mf.getAttributes(name.replace('.', '/') + '/');
+                var main = mf.getMainAttributes();
+                definePackage(name,
+                    attribute(section, main, Attributes.Name.SPECIFICATION_TITLE),
+                    attribute(section, main, Attributes.Name.SPECIFICATION_VERSION),
+                    attribute(section, main, Attributes.Name.SPECIFICATION_VENDOR),
+                    attribute(section, main, Attributes.Name.IMPLEMENTATION_TITLE),
+                    attribute(section, main, Attributes.Name.IMPLEMENTATION_VERSION),
+                    attribute(section, main, Attributes.Name.IMPLEMENTATION_VENDOR),
+                    null);
+            }
+        } catch (IllegalArgumentException e) {
+            // Another thread beat us to it
+            if (getDefinedPackage(name) == null)
+                throw e;
+        }
+    }
+
+    private static String attribute(Attributes section, Attributes main, Attributes.Name name) {
+        var ret = section == null ? null : section.getValue(name);
+        return ret != null ? ret : main.getValue(name);
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException error = null;
+        try {
+            super.close();
+        } catch (IOException e) {
+            error = e;
+        }
+        for (var entry : entries) {
+            try {
+                entry.close();
+            } catch (IOException e) {
+                if (error == null)
+                    error = e;
+                else
+                    error.addSuppressed(e);
+            }
+        }
+        if (error != null)
+            throw error;
+    }
+
+    /**
+     * One classpath entry, which isn't opened until something needs to look in it.
+     * Entries that are missing or can't be read have no directories, so they are never looked in.
+     */
+    private static final class Entry implements Closeable {
+        private final Path path;
+        private final URL url;
+        private Source source;
+        private boolean opened = false;
+        private Set<String> directories;
+
+        private Entry(Path path) {
+            this.path = path;
+            try {
+                this.url = path.toUri().toURL();
+            } catch (MalformedURLException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
+
+        // Null if the entry doesn't exist or can't be opened, same as a URLClassLoader we just skip it
+        private synchronized Source source() {
+            if (!opened) {
+                opened = true;
+                try {
+                    if (!Files.exists(path)) {
+                        if (Bootstrap.DEBUG)
+                            Bootstrap.log("Skipping missing classpath entry: " + path);
+                    } else if (Files.isDirectory(path)) {
+                        source = new PathSource(path, null);
+                    } else if (path.getFileSystem() != FileSystems.getDefault()) {
+                        source = PathSource.zip(path); // JarFile needs a real file, like the shim's pack doesn't have
+                    } else {
+                        source = new JarSource(path);
+                    }
+                } catch (IOException | UncheckedIOException e) {
+                    if (Bootstrap.DEBUG)
+                        Bootstrap.log("Skipping unreadable classpath entry: " + path + ": " + e);
+                }
+            }
+            return source;
+        }
+
+        private synchronized Set<String> directories() {
+            if (directories == null) {
+                var source = source();
+                try {
+                    directories = source == null ? Set.of() : source.directories();
+                } catch (IOException | UncheckedIOException e) {
+                    if (Bootstrap.DEBUG)
+                        Bootstrap.log("Skipping unreadable classpath entry: " + path + ": " + e);
+                    directories = Set.of();
+                }
+            }
+            return directories;
+        }
+
+        private byte[] read(String name) throws IOException {
+            var source = source();
+            return source == null ? null : source.read(name);
+        }
+
+        private URL find(String name) {
+            var source = source();
+            return source == null ? null : source.find(name);
+        }
+
+        private CodeSigner[] signers(String name) {
+            return source().signers(name);
+        }
+
+        private Manifest manifest() {
+            return source().manifest();
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (source != null)
+                source.close();
+        }
+    }
+
+    private interface Source extends Closeable {
+        /** Every directory that has something in it, including its parents, so that directories can be found too */
+        Set<String> directories() throws IOException;
+        byte[] read(String name) throws IOException;
+        URL find(String name);
+        CodeSigner[] signers(String name);
+        Manifest manifest();
+    }
+
+    private static final class JarSource implements Source {
+        private final JarFile jar;
+        private final String prefix;
+        private Manifest manifest;
+        private boolean manifestRead = false;
+
+        private JarSource(Path path) throws IOException {
+            this.jar = new JarFile(path.toFile(), true, ZipFile.OPEN_READ, Runtime.version());
+            this.prefix = "jar:" + path.toUri().toURL() + "!/";
+        }
+
+        @Override
+        public Set<String> directories() {
+            var ret = new HashSet<String>();
+            ret.add("");
+            jar.versionedStream().forEach(e -> {
+                var dir = directory(e.getName());
+                while (ret.add(dir))
+                    dir = directory(dir);
+            });
+            return ret;
+        }
+
+        @Override
+        public byte[] read(String name) throws IOException {
+            var entry = jar.getJarEntry(name);
+            if (entry == null || entry.isDirectory())
+                return null;
+            try (InputStream is = jar.getInputStream(entry)) {
+                return is.readAllBytes();
+            }
+        }
+
+        @Override
+        public URL find(String name) {
+            if (jar.getJarEntry(name) == null)
+                return null;
+            try {
+                return new URL(prefix + name);
+            } catch (MalformedURLException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public CodeSigner[] signers(String name) {
+            // Only valid after the entry has been fully read, which read() does
+            var entry = jar.getJarEntry(name);
+            return entry == null ? null : entry.getCodeSigners();
+        }
+
+        @Override
+        public synchronized Manifest manifest() {
+            if (!manifestRead) {
+                manifestRead = true;
+                try {
+                    manifest = jar.getManifest();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return manifest;
+        }
+
+        @Override
+        public void close() throws IOException {
+            jar.close();
+        }
+    }
+
+    private static final class PathSource implements Source {
+        private final Path root;
+        private final FileSystem fs;
+        private Manifest manifest;
+        private boolean manifestRead = false;
+
+        private PathSource(Path root, FileSystem fs) {
+            this.root = root;
+            this.fs = fs;
+        }
+
+        private static PathSource zip(Path path) throws IOException {
+            var fs = FileSystems.newFileSystem(path, Map.of("releaseVersion", "runtime"));
+            return new PathSource(fs.getRootDirectories().iterator().next(), fs);
+        }
+
+        @Override
+        public Set<String> directories() throws IOException {
+            var ret = new HashSet<String>();
+            try (var stream = Files.walk(root)) {
+                stream.filter(Files::isDirectory).forEach(dir -> {
+                    var relative = root.relativize(dir).toString().replace('\\', '/');
+                    if (relative.endsWith("/"))
+                        relative = relative.substring(0, relative.length() - 1);
+                    ret.add(relative);
+                });
+            }
+            return ret;
+        }
+
+        // Directories too, like a URLClassLoader, but only files have data
+        private Path resolve(String name) {
+            var ret = root.resolve(name);
+            return Files.exists(ret) ? ret : null;
+        }
+
+        @Override
+        public byte[] read(String name) throws IOException {
+            var path = resolve(name);
+            return path == null || Files.isDirectory(path) ? null : Files.readAllBytes(path);
+        }
+
+        @Override
+        public URL find(String name) {
+            var path = resolve(name);
+            try {
+                return path == null ? null : path.toUri().toURL();
+            } catch (MalformedURLException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public CodeSigner[] signers(String name) {
+            return null;
+        }
+
+        @Override
+        public synchronized Manifest manifest() {
+            if (!manifestRead) {
+                manifestRead = true;
+                var path = resolve(JarFile.MANIFEST_NAME);
+                if (path != null) {
+                    try (var is = Files.newInputStream(path)) {
+                        manifest = new Manifest(is);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            }
+            return manifest;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (fs != null)
+                fs.close();
+        }
+    }
+}
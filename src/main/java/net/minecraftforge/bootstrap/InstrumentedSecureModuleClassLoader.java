@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.bootstrap;
+
+import java.io.IOException;
+import java.lang.module.Configuration;
+import java.net.URL;
+import java.util.List;
+
+import net.minecraftforge.securemodules.SecureModuleClassLoader;
+
+/**
+ * SecureModuleClassLoader that records {@link ClassLoaderMetrics}, used when {@code bsl.metrics} is set,
+ * and the {@link LoadOrder}, used when {@code bsl.loadorder} is set. Either can be missing.
+ */
+class InstrumentedSecureModuleClassLoader extends SecureModuleClassLoader {
+    static {
+        ClassLoader.registerAsParallelCapable();
+    }
+
+    private final ClassLoaderMetrics metrics;
+
+    InstrumentedSecureModuleClassLoader(String name, ClassLoader parent, Configuration config, List<ModuleLayer> parentLayers, List<ClassLoader> parentLoaders, ClassLoaderMetrics metrics) {
+        super(name, parent, config, parentLayers, parentLoaders);
+        this.metrics = metrics;
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+        var start = metrics == null ? 0 : metrics.begin();
+        Class<?> ret = null;
+        var defined = false;
+        try {
+            var existing = findLoadedClass(name);
+            ret = super.loadClass(name, resolve);
+            defined = existing == null && ret.getClassLoader() == this;
+            return ret;
+        } finally {
+            var module = ret == null ? null : ret.getModule().getName();
+            if (metrics != null)
+                metrics.end(module, start, defined);
+            if (defined && LoadOrder.ENABLED)
+                LoadOrder.record(module, name.replace('.', '/').concat(".class"));
+        }
+    }
+
+    @Override
+    protected byte[] maybeTransformClassBytes(byte[] bytes, String name, String context) {
+        if (metrics != null)
+            metrics.bytes(bytes.length);
+        return super.maybeTransformClassBytes(bytes, name, context);
+    }
+
+    @Override
+    protected URL findResource(String moduleName, String name) throws IOException {
+        var ret = super.findResource(moduleName, name);
+        if (metrics != null)
+            metrics.resource(moduleName, ret != null);
+        if (ret != null && LoadOrder.ENABLED)
+            LoadOrder.record(moduleName, name);
+        return ret;
+    }
+
+    @Override
+    protected URL findResource(String name) {
+        var ret = super.findResource(name);
+        if (metrics != null)
+            metrics.resource(null, ret != null);
+        return ret;
+    }
+}
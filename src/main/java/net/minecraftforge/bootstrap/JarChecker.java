@@ -0,0 +1,246 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.bootstrap;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.minecraftforge.bootstrap.api.BootstrapIO;
+
+/**
+ * Checks the structure of every jar on the classpath before anything else opens them, enabled with {@code bsl.check}.
+ * A truncated or corrupt jar otherwise fails deep inside SecureJar or the zip file system, one at a time, after most of
+ * the boot work is done.
+ *
+ * Only the zip structure is read, with a few positional reads per jar: the end of central directory record (and its
+ * zip64 version), the central directory, and the local header of every entry. Entry contents, and so their CRCs,
+ * are not checked. Every jar is checked in parallel, and every problem is reported at once. A jar whose structure can't
+ * be followed stops at that problem, otherwise every entry with a problem is listed.
+ */
+final class JarChecker {
+    static final boolean ENABLED = Boolean.getBoolean("bsl.check");
+
+    private static final int LOC_SIG = 0x04034b50;
+    private static final int CEN_SIG = 0x02014b50;
+    private static final int END_SIG = 0x06054b50;
+    private static final int ZIP64_END_SIG = 0x06064b50;
+    private static final int ZIP64_LOC_SIG = 0x07064b50;
+    private static final int LOC_HEADER = 30;
+    private static final int CEN_HEADER = 46;
+    private static final int END_HEADER = 22;
+    private static final int ZIP64_END_HEADER = 56;
+    private static final int ZIP64_LOC_HEADER = 20;
+    private static final int MAX_COMMENT = 0xFFFF;
+    private static final int ZIP64_EXTRA = 0x0001;
+
+    private JarChecker() {}
+
+    /**
+     * @throws IllegalStateException Listing every jar that is broken, and what is wrong with it
+     */
+    static void check(List<Path> classpath) {
+        var jars = new ArrayList<Path>();
+        for (var path : classpath) {
+            // Directories have nothing to check, and the shim's pack has its own format
+            if (path.getFileSystem() == FileSystems.getDefault() && !BootstrapIO.isDirectory(path))
+                jars.add(path);
+        }
+
+        // Only a few small reads per jar, so it's worth threads even without the pipeline
+        var problems = Pipeline.mapParallel(jars, JarChecker::problems);
+        var report = new StringBuilder();
+        int broken = 0;
+        for (int x = 0; x < jars.size(); x++) {
+            var jar = problems.get(x);
+            if (jar.isEmpty())
+                continue;
+            broken++;
+            report.append("\n  ").append(jars.get(x)).append(':');
+            for (var problem : jar)
+                report.append("\n    ").append(problem);
+        }
+
+        if (Bootstrap.DEBUG) Bootstrap.log("Checked " + jars.size() + " jars, " + broken + " broken");
+        if (broken != 0)
+            throw new IllegalStateException("Found " + broken + " broken jar" + (broken == 1 ? "" : "s") + " on the classpath:" + report);
+    }
+
+    /**
+     * @return Everything that is wrong with the jar, empty if nothing is
+     */
+    static List<String> problems(Path path) {
+        var ret = new ArrayList<String>();
+        BootstrapIO.opened(path);
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            var problem = problems(path, channel, ret);
+            if (problem != null)
+                ret.add(problem);
+        } catch (IOException e) {
+            ret.add(e.toString());
+        }
+        return ret;
+    }
+
+    /**
+     * Entries that are broken on their own are added to the list, and checking goes on with the next one.
+     * @return The problem that made the rest of the jar impossible to check, or null if it could all be checked
+     */
+    private static String problems(Path path, FileChannel channel, List<String> ret) throws IOException {
+        long size = channel.size();
+        if (size < END_HEADER)
+            return "Too small to be a zip file, " + size + " bytes";
+
+        // The end record is last, followed only by a comment of up to 64k
+        int tail = (int)Math.min(size, END_HEADER + MAX_COMMENT);
+        var buf = read(path, channel, size - tail, tail);
+        int end = -1;
+        for (int x = tail - END_HEADER; x >= 0; x--) {
+            if (buf.getInt(x) == END_SIG && x + END_HEADER + (buf.getShort(x + 20) & 0xFFFF) <= tail) {
+                end = x;
+                break;
+            }
+        }
+        if (end == -1)
+            return "No end of central directory record, the file is probably truncated";
+
+        long endPos = size - tail + end;
+        long entries = buf.getShort(end + 10) & 0xFFFF;
+        long cenSize = buf.getInt(end + 12) & 0xFFFFFFFFL;
+        long cenOffset = buf.getInt(end + 16) & 0xFFFFFFFFL;
+        long cenEnd = endPos;
+
+        // Zip64 only if there is a locator, a zip can have exactly 65535 entries without it, same as ZipFile
+        var locator = endPos < ZIP64_LOC_HEADER ? null : read(path, channel, endPos - ZIP64_LOC_HEADER, ZIP64_LOC_HEADER);
+        if (locator != null && locator.getInt(0) == ZIP64_LOC_SIG) {
+            long zip64Pos = locator.getLong(8);
+            // With a prefix the locator's offset is off by its size, so try right before the locator like ZipFile does
+            var zip64 = zip64Pos < 0 || zip64Pos + ZIP64_END_HEADER > endPos - ZIP64_LOC_HEADER ? null : read(path, channel, zip64Pos, ZIP64_END_HEADER);
+            if ((zip64 == null || zip64.getInt(0) != ZIP64_END_SIG) && endPos >= ZIP64_LOC_HEADER + ZIP64_END_HEADER) {
+                zip64Pos = endPos - ZIP64_LOC_HEADER - ZIP64_END_HEADER;
+                zip64 = read(path, channel, zip64Pos, ZIP64_END_HEADER);
+            }
+            if (zip64 == null || zip64.getInt(0) != ZIP64_END_SIG)
+                return "Zip64 end of central directory record is missing";
+            entries = zip64.getLong(32);
+            cenSize = zip64.getLong(40);
+            cenOffset = zip64.getLong(48);
+            cenEnd = zip64Pos;
+        } else if (cenSize == 0xFFFFFFFFL || cenOffset == 0xFFFFFFFFL) {
+            return "Zip64 end of central directory locator is missing";
+        }
+
+        // Same as ZipFile, anything before the central directory that its offset doesn't account for is a prefix, like a launcher script
+        long cenPos = cenEnd - cenSize;
+        long base = cenPos - cenOffset;
+        if (cenSize < 0 || cenPos < 0 || base < 0)
+            return "Central directory of " + cenSize + " bytes at " + cenOffset + " doesn't fit before the end record at " + cenEnd;
+        if (cenSize > Integer.MAX_VALUE)
+            return "Central directory of " + cenSize + " bytes is too large";
+        if (entries < 0 || entries * CEN_HEADER > cenSize)
+            return "Central directory of " + cenSize + " bytes is too small for " + entries + " entries";
+
+        var cen = read(path, channel, cenPos, (int)cenSize);
+        var offsets = new long[(int)entries];
+        var names = new int[(int)entries];
+        int valid = 0;
+        int pos = 0;
+        for (int x = 0; x < entries; x++) {
+            if (pos + CEN_HEADER > cenSize)
+                return "Central directory ends after " + x + " of " + entries + " entries";
+            if (cen.getInt(pos) != CEN_SIG)
+                return "Central directory entry " + x + " at " + (cenPos + pos) + " has a bad signature";
+            int nameLen = cen.getShort(pos + 28) & 0xFFFF;
+            int extraLen = cen.getShort(pos + 30) & 0xFFFF;
+            int commentLen = cen.getShort(pos + 32) & 0xFFFF;
+            int next = pos + CEN_HEADER + nameLen + extraLen + commentLen;
+            if (next > cenSize)
+                return "Central directory entry " + x + " at " + (cenPos + pos) + " runs past the end of the central directory";
+
+            // The entry's length is known, so a bad offset doesn't stop us finding the next one
+            long offset = cen.getInt(pos + 42) & 0xFFFFFFFFL;
+            if (offset == 0xFFFFFFFFL)
+                offset = zip64Offset(cen, pos, nameLen, extraLen);
+            if (offset == -1) {
+                ret.add("Central directory entry " + x + " at " + (cenPos + pos) + " is missing its zip64 offset");
+            } else if (offset + base + LOC_HEADER + nameLen > cenPos) {
+                ret.add("Local header of " + name(cen, pos, nameLen) + " at " + offset + " is past the start of the central directory");
+            } else {
+                offsets[valid] = offset;
+                names[valid] = pos;
+                valid++;
+            }
+            pos = next;
+        }
+        if (pos != cenSize)
+            ret.add("Central directory has " + (cenSize - pos) + " bytes after its " + entries + " entries");
+
+        // Every local header has to be where the central directory says, with the same name
+        var order = new Integer[valid];
+        for (int x = 0; x < order.length; x++)
+            order[x] = x;
+        Arrays.sort(order, (a, b) -> Long.compare(offsets[a], offsets[b]));
+        var loc = ByteBuffer.allocate(LOC_HEADER).order(ByteOrder.LITTLE_ENDIAN);
+        for (var x : order) {
+            int cenEntry = names[x];
+            int nameLen = cen.getShort(cenEntry + 28) & 0xFFFF;
+            loc.clear();
+            readFully(channel, loc, base + offsets[x]);
+            BootstrapIO.read(path, LOC_HEADER);
+            if (loc.getInt(0) != LOC_SIG)
+                ret.add("Local header of " + name(cen, cenEntry, nameLen) + " at " + offsets[x] + " has a bad signature");
+            else if ((loc.getShort(26) & 0xFFFF) != nameLen)
+                ret.add("Local header of " + name(cen, cenEntry, nameLen) + " at " + offsets[x] + " doesn't match the central directory");
+        }
+        return null;
+    }
+
+    // The local header offset from the zip64 extra field, which also has the sizes before it if they overflowed too
+    private static long zip64Offset(ByteBuffer cen, int pos, int nameLen, int extraLen) {
+        int skip = 0;
+        if ((cen.getInt(pos + 24) & 0xFFFFFFFFL) == 0xFFFFFFFFL) skip += 8; // Uncompressed size
+        if ((cen.getInt(pos + 20) & 0xFFFFFFFFL) == 0xFFFFFFFFL) skip += 8; // Compressed size
+
+        int extra = pos + CEN_HEADER + nameLen;
+        int end = extra + extraLen;
+        while (extra + 4 <= end) {
+            int tag = cen.getShort(extra) & 0xFFFF;
+            int len = cen.getShort(extra + 2) & 0xFFFF;
+            if (tag == ZIP64_EXTRA && skip + 8 <= len && extra + 4 + len <= end)
+                return cen.getLong(extra + 4 + skip);
+            extra += 4 + len;
+        }
+        return -1;
+    }
+
+    private static String name(ByteBuffer cen, int pos, int nameLen) {
+        var bytes = new byte[nameLen];
+        cen.get(pos + CEN_HEADER, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static ByteBuffer read(Path path, FileChannel channel, long position, int length) throws IOException {
+        var ret = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(channel, ret, position);
+        BootstrapIO.read(path, length);
+        return ret;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, position + buf.position()) == -1)
+                throw new EOFException("Unexpected end of file at " + (position + buf.position()));
+        }
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.bootstrap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.module.ModuleDescriptor;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import cpw.mods.jarhandling.SecureJar;
+
+/**
+ * Everything we need to know about a jar to put it in a module layer without opening it:
+ * its module descriptor (which includes the package list), its manifest, and the presence
+ * of any files {@link Bootstrap#probedFiles()} says we look for when selecting modules.
+ *
+ * Entries are keyed by path and only used while the file's identity is unchanged. This is
+ * purely metadata, signatures are still verified by the real SecureJar once it's opened.
+ */
+final class JarInfoCache {
+    private static final String FILE = "jars.bin";
+    private static final int VERSION = 1;
+
+    record Info(String identity, ModuleDescriptor descriptor, byte[] manifest, Set<String> probed, Set<String> present) {}
+
+    private final Map<String, Info> cache;
+    // Filled from the pipeline's threads when it is enabled
+    private final Map<String, Info> results = Collections.synchronizedMap(new TreeMap<>());
+    private volatile boolean dirty = false;
+
+    private JarInfoCache(Map<String, Info> cache) {
+        this.cache = cache;
+    }
+
+    static JarInfoCache load() {
+        var cache = LaunchCache.read(FILE, VERSION, JarInfoCache::readCache);
+        return new JarInfoCache(cache == null ? Map.of() : cache);
+    }
+
+    void save() {
+        if (dirty || results.size() != cache.size())
+            LaunchCache.write(FILE, VERSION, out -> writeCache(out, results));
+    }
+
+    /**
+     * @return The cached info, or null if there is none or the file has changed
+     */
+    Info get(Path path, Set<String> probes) {
+        var key = path.toAbsolutePath().toString();
+        var info = cache.get(key);
+        if (info == null || !info.probed.containsAll(probes) || !info.identity.equals(LaunchCache.identity(path)))
+            return null;
+        results.put(key, info);
+        return info;
+    }
+
+    void put(Path path, SecureJar jar, Set<String> probes) {
+        var meta = jar.moduleDataProvider();
+        var present = new HashSet<String>();
+        for (var probe : probes) {
+            if (meta.findFile(probe).isPresent())
+                present.add(probe);
+        }
+
+        var manifest = new ByteArrayOutputStream();
+        try {
+            meta.getManifest().write(manifest);
+        } catch (IOException e) {
+            sneak(e);
+        }
+
+        results.put(path.toAbsolutePath().toString(), new Info(LaunchCache.identity(path), meta.descriptor(), manifest.toByteArray(), Set.copyOf(probes), present));
+        dirty = true;
+    }
+
+    /* ======================================================================
+     *                             Serialization
+     * ======================================================================
+     */
+
+    private static Map<String, Info> readCache(DataInputStream in) throws IOException {
+        var ret = new HashMap<String, Info>();
+        int count = in.readInt();
+        for (int x = 0; x < count; x++) {
+            var key = in.readUTF();
+            var identity = in.readUTF();
+            var descriptor = readDescriptor(in);
+            var manifest = LaunchCache.readBytes(in);
+            var probed = readStrings(in);
+            var present = readStrings(in);
+            ret.put(key, new Info(identity, descriptor, manifest, probed, present));
+        }
+        return ret;
+    }
+
+    private static void writeCache(DataOutputStream out, Map<String, Info> entries) throws IOException {
+        out.writeInt(entries.size());
+        for (var entry : entries.entrySet()) {
+            var info = entry.getValue();
+            out.writeUTF(entry.getKey());
+            out.writeUTF(info.identity);
+            writeDescriptor(out, info.descriptor);
+            LaunchCache.writeBytes(out, info.manifest);
+            writeStrings(out, info.probed);
+            writeStrings(out, info.present);
+        }
+    }
+
+    static void writeDescriptor(DataOutputStream out, ModuleDescriptor desc) throws IOException {
+        out.writeUTF(desc.name());
+        writeEnums(out, desc.modifiers());
+        out.writeUTF(desc.version().map(Object::toString).orElse(""));
+        out.writeUTF(desc.mainClass().orElse(""));
+        writeStrings(out, desc.packages());
+        writeStrings(out, desc.uses());
+
+        out.writeInt(desc.provides().size());
+        for (var provides : desc.provides()) {
+            out.writeUTF(provides.service());
+            writeStrings(out, provides.providers());
+        }
+
+        if (desc.isAutomatic())
+            return;
+
+        out.writeInt(desc.requires().size());
+        for (var requires : desc.requires()) {
+            writeEnums(out, requires.modifiers());
+            out.writeUTF(requires.name());
+            out.writeUTF(requires.compiledVersion().map(Object::toString).orElse(""));
+        }
+
+        out.writeInt(desc.exports().size());
+        for (var exports : desc.exports()) {
+            writeEnums(out, exports.modifiers());
+            out.writeUTF(exports.source());
+            writeStrings(out, exports.targets());
+        }
+
+        // Open modules can't declare opens, as everything is open
+        if (desc.isOpen())
+            return;
+
+        out.writeInt(desc.opens().size());
+        for (var opens : desc.opens()) {
+            writeEnums(out, opens.modifiers());
+            out.writeUTF(opens.source());
+            writeStrings(out, opens.targets());
+        }
+    }
+
+    static ModuleDescriptor readDescriptor(DataInputStream in) throws IOException {
+        var name = in.readUTF();
+        var modifiers = readEnums(in, ModuleDescriptor.Modifier.values());
+        var builder = ModuleDescriptor.newModule(name, modifiers);
+
+        var version = in.readUTF();
+        if (!version.isEmpty())
+            builder.version(version);
+        var mainClass = in.readUTF();
+        if (!mainClass.isEmpty())
+            builder.mainClass(mainClass);
+        builder.packages(readStrings(in));
+        readStrings(in).forEach(builder::uses);
+
+        int count = in.readInt();
+        for (int x = 0; x < count; x++)
+            builder.provides(in.readUTF(), readList(in));
+
+        if (modifiers.contains(ModuleDescriptor.Modifier.AUTOMATIC))
+            return builder.build();
+
+        count = in.readInt();
+        for (int x = 0; x < count; x++) {
+            var mods = readEnums(in, ModuleDescriptor.Requires.Modifier.values());
+            var target = in.readUTF();
+            var compiled = in.readUTF();
+            if (compiled.isEmpty())
+                builder.requires(mods, target);
+            else
+                builder.requires(mods, target, ModuleDescriptor.Version.parse(compiled));
+        }
+
+        count = in.readInt();
+        for (int x = 0; x < count; x++) {
+            var mods = readEnums(in, ModuleDescriptor.Exports.Modifier.values());
+            var source = in.readUTF();
+            var targets = readStrings(in);
+            if (targets.isEmpty())
+                builder.exports(mods, source);
+            else
+                builder.exports(mods, source, targets);
+        }
+
+        if (modifiers.contains(ModuleDescriptor.Modifier.OPEN))
+            return builder.build();
+
+        count = in.readInt();
+        for (int x = 0; x < count; x++) {
+            var mods = readEnums(in, ModuleDescriptor.Opens.Modifier.values());
+            var source = in.readUTF();
+            var targets = readStrings(in);
+            if (targets.isEmpty())
+                builder.opens(mods, source);
+            else
+                builder.opens(mods, source, targets);
+        }
+
+        return builder.build();
+    }
+
+    private static void writeStrings(DataOutputStream out, Iterable<String> values) throws IOException {
+        var list = new ArrayList<String>();
+        values.forEach(list::add);
+        out.writeInt(list.size());
+        for (var value : list)
+            out.writeUTF(value);
+    }
+
+    private static List<String> readList(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        var ret = new ArrayList<String>(count);
+        for (int x = 0; x < count; x++)
+            ret.add(in.readUTF());
+        return ret;
+    }
+
+    private static Set<String> readStrings(DataInputStream in) throws IOException {
+        return new HashSet<>(readList(in));
+    }
+
+    private static void writeEnums(DataOutputStream out, Set<? extends Enum<?>> values) throws IOException {
+        out.writeInt(values.size());
+        for (var value : values)
+            out.writeByte(value.ordinal());
+    }
+
+    private static <E extends Enum<E>> Set<E> readEnums(DataInputStream in, E[] values) throws IOException {
+        int count = in.readInt();
+        var ret = new HashSet<E>();
+        for (int x = 0; x < count; x++)
+            ret.add(values[in.readByte()]);
+        return ret;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E extends Throwable, R> R sneak(Exception exception) throws E {
+        throw (E)exception;
+    }
+}
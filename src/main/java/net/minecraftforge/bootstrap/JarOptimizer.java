@@ -0,0 +1,364 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.bootstrap;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import net.minecraftforge.bootstrap.api.BootstrapLog;
+import net.minecraftforge.bootstrap.api.Util;
+
+/**
+ * Rewrites library jars so that the entries a launch needs are at the front, in the order they were needed,
+ * using a {@link LoadOrder} recorded by launching with {@code bsl.loadorder}.
+ * <pre>
+ *   JarOptimizer --order &lt;file&gt; (--output &lt;dir&gt; [--root &lt;dir&gt;] | --in-place) [--store] [jar...]
+ * </pre>
+ * The manifest and signature files go first, where {@link java.util.jar.JarInputStream} expects them,
+ * then module descriptors and service files, then every recorded entry, then everything else in its original order.
+ * With {@code --store} the recorded entries are stored instead of deflated, so they don't need inflating at launch.
+ *
+ * Every entry's name, metadata, and contents are kept, and the manifest is copied as is, so signatures stay valid.
+ * Each rewritten jar is compared to the original before it is kept. With no jars listed, every jar in the recording
+ * is rewritten, listed jars are matched to recorded modules the same way Bootstrap names them.
+ */
+public class JarOptimizer {
+    private static final int PAGE = 4096;
+    private static final int EOCD = 0x06054b50;
+    private static final int CEN = 0x02014b50;
+
+    private record Stats(int entries, int hot, long pagesBefore, long pagesAfter, long spanBefore, long spanAfter) {}
+
+    public static void main(String[] args) throws IOException {
+        Path order = null;
+        Path output = null;
+        Path root = Path.of("").toAbsolutePath();
+        var inPlace = false;
+        var store = false;
+        var jars = new ArrayList<Path>();
+        for (int x = 0; x < args.length; x++) {
+            switch (args[x]) {
+                case "--order" -> order = Path.of(value(args, ++x));
+                case "--output" -> output = Path.of(value(args, ++x)).toAbsolutePath();
+                case "--root" -> root = Path.of(value(args, ++x)).toAbsolutePath();
+                case "--in-place" -> inPlace = true;
+                case "--store" -> store = true;
+                default -> {
+                    if (args[x].startsWith("--"))
+                        throw new IllegalArgumentException("Unknown argument: " + args[x]);
+                    jars.add(Path.of(args[x]).toAbsolutePath());
+                }
+            }
+        }
+        if (order == null)
+            throw new IllegalArgumentException("Missing --order <file>, record one by launching with -Dbsl.loadorder=<file>");
+        if ((output == null) == !inPlace)
+            throw new IllegalArgumentException("Expected one of --output <dir> or --in-place");
+
+        var recording = LoadOrder.read(order);
+        var targets = new HashMap<Path, String>();
+        if (jars.isEmpty()) {
+            recording.modules().forEach((name, path) -> targets.put(path, name));
+        } else {
+            for (var jar : jars) {
+                var info = Util.findAutomaticModule(jar);
+                if (info == null || !recording.modules().containsKey(info.name()))
+                    BootstrapLog.info("Not in the recording, only moving descriptors to the front: " + jar);
+                targets.put(jar, info == null ? null : info.name());
+            }
+        }
+
+        long before = 0;
+        long after = 0;
+        for (var entry : targets.entrySet()) {
+            var source = entry.getKey();
+            var hot = entry.getValue() == null ? List.<String>of() : recording.entries().getOrDefault(entry.getValue(), List.of());
+            Path target;
+            if (inPlace)
+                target = source;
+            else if (source.startsWith(root))
+                target = output.resolve(root.relativize(source).toString());
+            else
+                target = output.resolve(source.getFileName().toString());
+
+            var stats = optimize(source, target, hot, store);
+            before += stats.pagesBefore();
+            after += stats.pagesAfter();
+            BootstrapLog.info(String.format(Locale.ROOT, "%s: %d/%d entries first, %d -> %d pages, %d -> %d bytes to reach the last one",
+                target, stats.hot(), stats.entries(), stats.pagesBefore(), stats.pagesAfter(), stats.spanBefore(), stats.spanAfter()));
+        }
+        BootstrapLog.info(String.format(Locale.ROOT, "Rewrote %d jars, launch entries now span %d pages instead of %d (%d KiB)",
+            targets.size(), after, before, (before - after) * PAGE / 1024));
+        BootstrapLog.info("Compare with the next launch using -Dbsl.io=true");
+    }
+
+    private static String value(String[] args, int idx) {
+        if (idx >= args.length)
+            throw new IllegalArgumentException("Missing value for " + args[idx - 1]);
+        return args[idx];
+    }
+
+    /**
+     * Rewrites one jar, the target can be the source. Nothing is replaced unless the new jar has the same contents.
+     */
+    private static Stats optimize(Path source, Path target, List<String> hot, boolean store) throws IOException {
+        Files.createDirectories(target.toAbsolutePath().getParent());
+        var tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        try {
+            Set<String> first;
+            int count;
+            try (var zip = new ZipFile(source.toFile())) {
+                var ordered = order(zip, hot);
+                first = ordered.first();
+                count = ordered.entries().size();
+                write(zip, ordered.entries(), store ? first : Set.of(), tmp);
+            }
+            compare(source, tmp);
+
+            var layoutBefore = layout(source);
+            var layoutAfter = layout(tmp);
+            var ret = new Stats(count, first.size(),
+                pages(layoutBefore, first), pages(layoutAfter, first),
+                span(layoutBefore, first), span(layoutAfter, first));
+
+            try {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return ret;
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private record Ordered(List<ZipEntry> entries, Set<String> first) {}
+
+    private static Ordered order(ZipFile zip, List<String> hot) {
+        var all = new ArrayList<ZipEntry>();
+        var names = new HashMap<String, ZipEntry>();
+        for (var itr = zip.entries(); itr.hasMoreElements(); ) {
+            var entry = itr.nextElement();
+            // Only the first copy of a duplicated name is readable, so that's the only one we keep a position for
+            if (names.putIfAbsent(entry.getName(), entry) == null)
+                all.add(entry);
+        }
+
+        var wanted = new LinkedHashSet<String>();
+        wanted.add("META-INF/");
+        wanted.add(JarFile.MANIFEST_NAME);
+        for (var entry : all) {
+            if (isSignatureFile(entry.getName()))
+                wanted.add(entry.getName());
+        }
+        for (var entry : all) {
+            var name = entry.getName();
+            if (name.equals("module-info.class") || (name.startsWith("META-INF/versions/") && name.endsWith("/module-info.class")))
+                wanted.add(name);
+        }
+        for (var entry : all) {
+            if (entry.getName().startsWith("META-INF/services/") && !entry.isDirectory())
+                wanted.add(entry.getName());
+        }
+
+        var versioned = new HashMap<String, List<String>>();
+        for (var entry : all) {
+            var name = entry.getName();
+            if (name.startsWith("META-INF/versions/")) {
+                int idx = name.indexOf('/', "META-INF/versions/".length());
+                if (idx != -1)
+                    versioned.computeIfAbsent(name.substring(idx + 1), k -> new ArrayList<>()).add(name);
+            }
+        }
+        for (var name : hot) {
+            wanted.add(name);
+            // We don't know which release the recording ran on, so keep every version together
+            wanted.addAll(versioned.getOrDefault(name, List.of()));
+        }
+
+        var ret = new ArrayList<ZipEntry>(all.size());
+        var first = new LinkedHashSet<String>();
+        for (var name : wanted) {
+            var entry = names.get(name);
+            if (entry != null) {
+                ret.add(entry);
+                first.add(name);
+            }
+        }
+        for (var entry : all) {
+            if (!first.contains(entry.getName()))
+                ret.add(entry);
+        }
+        return new Ordered(ret, first);
+    }
+
+    private static void write(ZipFile zip, List<ZipEntry> entries, Set<String> stored, Path target) throws IOException {
+        try (var out = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(target)))) {
+            if (zip.getComment() != null)
+                out.setComment(zip.getComment());
+
+            var buf = new byte[0x10000];
+            for (var entry : entries) {
+                var copy = new ZipEntry(entry);
+                if (entry.getMethod() == ZipEntry.STORED || entry.isDirectory() || stored.contains(entry.getName())) {
+                    copy.setMethod(ZipEntry.STORED);
+                    copy.setSize(entry.getSize());
+                    copy.setCompressedSize(entry.getSize());
+                    copy.setCrc(entry.getCrc());
+                } else {
+                    // Recompressed, so the compressed size is unknown until it's written
+                    copy.setMethod(ZipEntry.DEFLATED);
+                    copy.setCompressedSize(-1);
+                }
+
+                out.putNextEntry(copy);
+                try (var in = zip.getInputStream(entry)) {
+                    int len;
+                    while ((len = in.read(buf)) != -1)
+                        out.write(buf, 0, len);
+                }
+                out.closeEntry();
+            }
+        }
+    }
+
+    /**
+     * Makes sure both jars have the same entries with the same contents, and that a signed jar still verifies.
+     */
+    private static void compare(Path original, Path rewritten) throws IOException {
+        try (var a = new ZipFile(original.toFile()); var b = new JarFile(rewritten.toFile(), true)) {
+            var names = new HashSet<String>();
+            for (var itr = a.entries(); itr.hasMoreElements(); ) {
+                var entry = itr.nextElement();
+                if (!names.add(entry.getName()))
+                    continue;
+
+                var other = b.getJarEntry(entry.getName());
+                if (other == null)
+                    throw new IOException("Rewritten jar is missing " + entry.getName() + ": " + original);
+                if (other.getCrc() != entry.getCrc() || other.getSize() != entry.getSize() || other.getTime() != entry.getTime())
+                    throw new IOException("Rewritten jar has a different " + entry.getName() + ": " + original);
+
+                try (var x = a.getInputStream(entry); var y = b.getInputStream(other)) {
+                    if (!same(x, y))
+                        throw new IOException("Rewritten jar has a different " + entry.getName() + ": " + original);
+                } catch (SecurityException e) {
+                    throw new IOException("Rewritten jar no longer verifies " + entry.getName() + ": " + original, e);
+                }
+            }
+            if (names.size() != b.size())
+                throw new IOException("Rewritten jar has extra entries: " + original);
+        }
+    }
+
+    private static boolean same(InputStream a, InputStream b) throws IOException {
+        var x = new byte[0x2000];
+        var y = new byte[0x2000];
+        while (true) {
+            int len = a.readNBytes(x, 0, x.length);
+            if (b.readNBytes(y, 0, len) != len)
+                return false;
+            if (!Arrays.equals(x, 0, len, y, 0, len))
+                return false;
+            if (len < x.length)
+                return b.read() == -1;
+        }
+    }
+
+    private static boolean isSignatureFile(String name) {
+        var upper = name.toUpperCase(Locale.ENGLISH);
+        if (!upper.startsWith("META-INF/") || upper.indexOf('/', 9) != -1)
+            return false;
+        return upper.endsWith(".SF") || upper.endsWith(".RSA") || upper.endsWith(".DSA") || upper.endsWith(".EC") || upper.startsWith("META-INF/SIG-");
+    }
+
+    /* ======================================================================
+     *                               Reporting
+     * ======================================================================
+     */
+
+    /**
+     * Where every entry's local header and data are, or an empty map if we can't tell, which includes zip64.
+     * The local header's extra field isn't always the same length as the central directory's, but it's close enough for an estimate.
+     */
+    private static Map<String, long[]> layout(Path path) throws IOException {
+        var ret = new HashMap<String, long[]>();
+        try (var channel = FileChannel.open(path)) {
+            long size = channel.size();
+            int tail = (int)Math.min(size, 0xFFFF + 22);
+            var buf = ByteBuffer.allocate(tail).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(buf, size - tail);
+
+            for (int x = tail - 22; x >= 0; x--) {
+                if (buf.getInt(x) != EOCD)
+                    continue;
+
+                long cdSize = buf.getInt(x + 12) & 0xFFFFFFFFL;
+                long cdOffset = buf.getInt(x + 16) & 0xFFFFFFFFL;
+                if (cdOffset == 0xFFFFFFFFL || cdOffset + cdSize > size)
+                    return ret;
+
+                var cd = channel.map(FileChannel.MapMode.READ_ONLY, cdOffset, cdSize).order(ByteOrder.LITTLE_ENDIAN);
+                int pos = 0;
+                while (pos + 46 <= cdSize && cd.getInt(pos) == CEN) {
+                    long csize = cd.getInt(pos + 20) & 0xFFFFFFFFL;
+                    int nameLen = cd.getShort(pos + 28) & 0xFFFF;
+                    int extraLen = cd.getShort(pos + 30) & 0xFFFF;
+                    int commentLen = cd.getShort(pos + 32) & 0xFFFF;
+                    long offset = cd.getInt(pos + 42) & 0xFFFFFFFFL;
+                    var name = new byte[nameLen];
+                    cd.get(pos + 46, name);
+                    ret.putIfAbsent(new String(name, StandardCharsets.UTF_8), new long[] { offset, offset + 30 + nameLen + extraLen + csize });
+                    pos += 46 + nameLen + extraLen + commentLen;
+                }
+                return ret;
+            }
+        }
+        return ret;
+    }
+
+    private static long pages(Map<String, long[]> layout, Set<String> names) {
+        var pages = new BitSet();
+        for (var name : names) {
+            var range = layout.get(name);
+            if (range != null && range[1] > range[0])
+                pages.set((int)(range[0] / PAGE), (int)((range[1] - 1) / PAGE) + 1);
+        }
+        return pages.cardinality();
+    }
+
+    private static long span(Map<String, long[]> layout, Set<String> names) {
+        long ret = 0;
+        for (var name : names) {
+            var range = layout.get(name);
+            if (range != null)
+                ret = Math.max(ret, range[1]);
+        }
+        return ret;
+    }
+}
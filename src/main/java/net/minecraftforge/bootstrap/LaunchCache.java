@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.bootstrap;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import net.minecraftforge.bootstrap.api.BootstrapIO;
+
+/**
+ * Small persistent store for things we can avoid recomputing between launches.
+ * Disabled unless the {@code bsl.cache} system property points at a directory.
+ *
+ * Every cache file starts with a magic and a per-file version, anything that doesn't
+ * match is treated as missing. Writes go to a temp file and are moved into place so
+ * that a crashed launch can't leave a half written cache behind.
+ */
+final class LaunchCache {
+    private static final String CACHE = System.getProperty("bsl.cache");
+    private static final int MAGIC = 0x42534C43; // BSLC
+
+    interface Reader<T> {
+        T read(DataInputStream in) throws IOException;
+    }
+
+    interface Writer {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private LaunchCache() {}
+
+    static boolean enabled() {
+        return CACHE != null && !CACHE.isBlank();
+    }
+
+    static Path file(String name) {
+        return Path.of(CACHE).toAbsolutePath().resolve(name);
+    }
+
+    /**
+     * Reads the named cache file, returning null if caching is disabled, the file doesn't exist,
+     * or it was written by a different version.
+     */
+    static <T> T read(String name, int version, Reader<T> reader) {
+        if (!enabled())
+            return null;
+
+        var file = file(name);
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != version)
+                return null;
+            return reader.read(in);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | RuntimeException e) {
+            if (Bootstrap.DEBUG)
+                Bootstrap.log("Failed to read cache " + file + ": " + e);
+            return null;
+        }
+    }
+
+    static void write(String name, int version, Writer writer) {
+        if (!enabled())
+            return;
+
+        var file = file(name);
+        try {
+            Files.createDirectories(file.getParent());
+            var tmp = Files.createTempFile(file.getParent(), name, ".tmp");
+            try {
+                try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                    out.writeInt(MAGIC);
+                    out.writeInt(version);
+                    writer.write(out);
+                }
+                try {
+                    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        } catch (IOException e) {
+            if (Bootstrap.DEBUG)
+                Bootstrap.log("Failed to write cache " + file + ": " + e);
+        }
+    }
+
+    /**
+     * Cheap identity of a file: size, modification time, and the file key if the file system has one.
+     * Used to notice that a file changed, never to prove that it didn't.
+     */
+    static String identity(Path path) {
+        BootstrapIO.stat(path);
+        try {
+            var attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            var key = attrs.fileKey();
+            return attrs.size() + ":" + attrs.lastModifiedTime().toMillis() + (key == null ? "" : ":" + key);
+        } catch (IOException e) {
+            return "missing";
+        }
+    }
+
+    static byte[] sha256(Path path) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // Every JVM is required to have SHA-256
+        }
+
+        var buf = new byte[0x10000];
+        try (var in = BootstrapIO.newInputStream(path)) {
+            int len;
+            while ((len = in.read(buf)) != -1)
+                digest.update(buf, 0, len);
+        }
+        return digest.digest();
+    }
+
+    static void writeBytes(DataOutputStream out, byte[] data) throws IOException {
+        out.writeInt(data.length);
+        out.write(data);
+    }
+
+    static byte[] readBytes(DataInputStream in) throws IOException {
+        var data = new byte[in.readInt()];
+        in.readFully(data);
+        return data;
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.bootstrap;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.module.ModuleDescriptor;
+import java.net.URI;
+import java.nio.file.Path;
+import java.security.CodeSigner;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+
+import cpw.mods.jarhandling.SecureJar;
+
+/**
+ * A SecureJar built from {@link JarInfoCache} data, which doesn't open the underlying file until
+ * something actually needs its contents. Typically that is the module's class loader looking for
+ * the first class or resource in it.
+ *
+ * Name, descriptor, packages, providers, manifest, and the presence of probed files are all
+ * answered from the cache.
+ */
+final class LazyJar implements SecureJar, SecureJar.ModuleDataProvider {
+    private final Path path;
+    private final JarInfoCache.Info info;
+    private final List<Provider> providers;
+    private volatile SecureJar delegate;
+    private Manifest manifest;
+
+    LazyJar(Path path, JarInfoCache.Info info) {
+        this.path = path;
+        this.info = info;
+        this.providers = info.descriptor().provides().stream()
+            .map(p -> new Provider(p.service(), p.providers()))
+            .toList();
+    }
+
+    boolean isOpen() {
+        return delegate != null;
+    }
+
+    private SecureJar delegate() {
+        var ret = delegate;
+        if (ret == null) {
+            synchronized (this) {
+                ret = delegate;
+                if (ret == null) {
+                    if (Bootstrap.DEBUG)
+                        Bootstrap.log("Opening lazy jar: " + path);
+                    ret = delegate = SecureJar.from(path);
+                }
+            }
+        }
+        return ret;
+    }
+
+    /* ======================================================================
+     *                         Answered from the cache
+     * ======================================================================
+     */
+
+    @Override
+    public ModuleDataProvider moduleDataProvider() {
+        return this;
+    }
+
+    @Override
+    public String name() {
+        return info.descriptor().name();
+    }
+
+    @Override
+    public ModuleDescriptor descriptor() {
+        return info.descriptor();
+    }
+
+    @Override
+    public URI uri() {
+        return path.toUri();
+    }
+
+    @Override
+    public Path getPrimaryPath() {
+        return path;
+    }
+
+    @Override
+    public Set<String> getPackages() {
+        return info.descriptor().packages();
+    }
+
+    @Override
+    public List<Provider> getProviders() {
+        return providers;
+    }
+
+    @Override
+    public Optional<URI> findFile(String name) {
+        if (!isOpen() && info.probed().contains(name) && !info.present().contains(name))
+            return Optional.empty();
+        return delegate().moduleDataProvider().findFile(name);
+    }
+
+    @Override
+    public synchronized Manifest getManifest() {
+        if (isOpen())
+            return delegate.moduleDataProvider().getManifest();
+
+        if (manifest == null) {
+            try {
+                manifest = new Manifest(new ByteArrayInputStream(info.manifest()));
+            } catch (IOException e) {
+                return delegate().moduleDataProvider().getManifest();
+            }
+        }
+        return manifest;
+    }
+
+    /* ======================================================================
+     *                          Needs the real jar
+     * ======================================================================
+     */
+
+    @Override
+    public Optional<InputStream> open(String name) {
+        return delegate().moduleDataProvider().open(name);
+    }
+
+    @Override
+    public CodeSigner[] verifyAndGetSigners(String cname, byte[] bytes) {
+        return delegate().moduleDataProvider().verifyAndGetSigners(cname, bytes);
+    }
+
+    @Override
+    public CodeSigner[] getManifestSigners() {
+        return delegate().getManifestSigners();
+    }
+
+    @Override
+    public Status verifyPath(Path path) {
+        return delegate().verifyPath(path);
+    }
+
+    @Override
+    public Status getFileStatus(String name) {
+        return delegate().getFileStatus(name);
+    }
+
+    @Override
+    public Attributes getTrustedManifestEntries(String name) {
+        return delegate().getTrustedManifestEntries(name);
+    }
+
+    @Override
+    public boolean hasSecurityData() {
+        return delegate().hasSecurityData();
+    }
+
+    @Override
+    public Path getPath(String first, String... rest) {
+        return delegate().getPath(first, rest);
+    }
+
+    @Override
+    public Path getRootPath() {
+        return delegate().getRootPath();
+    }
+
+    @Override
+    public String toString() {
+        return "LazyJar[" + path + (isOpen() ? ", open]" : "]");
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.bootstrap;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import cpw.mods.jarhandling.SecureJar;
+import net.minecraftforge.bootstrap.api.BootstrapLog;
+
+/**
+ * Records the order that runtime modules' classes and resources are first asked for, enabled by pointing the
+ * {@code bsl.loadorder} system property at a file. The file is written when the JVM exits, and is what
+ * {@link JarOptimizer} uses to decide which entries to move to the front of each jar.
+ * <pre>
+ *   module  &lt;name&gt; &lt;path&gt;    The jar each runtime module came from
+ *   &lt;name&gt;  &lt;entry&gt;          Entries, in the order they were first used
+ * </pre>
+ * Columns are tab separated. Only the runtime layer is recorded, the boot layer's loader belongs to the JVM.
+ */
+final class LoadOrder {
+    static final String FILE = System.getProperty("bsl.loadorder");
+    static final boolean ENABLED = FILE != null && !FILE.isBlank();
+    private static final String MODULE = "module";
+
+    private static final Map<String, Path> MODULES = new ConcurrentHashMap<>();
+    private static final Set<String> SEEN = ConcurrentHashMap.newKeySet();
+    private static final ConcurrentLinkedQueue<String[]> ORDER = new ConcurrentLinkedQueue<>();
+
+    record Recording(Map<String, Path> modules, Map<String, List<String>> entries) {}
+
+    private LoadOrder() {}
+
+    /**
+     * Starts recording for the runtime modules, and writes everything recorded when the JVM exits.
+     */
+    static void start(List<SecureJar> jars) {
+        for (var jar : jars) {
+            var path = jar.getPrimaryPath();
+            // Directories and anything in the shim's pack can't be rewritten
+            if (path != null && path.getFileSystem() == FileSystems.getDefault() && !Files.isDirectory(path))
+                MODULES.put(jar.name(), path.toAbsolutePath());
+        }
+
+        var thread = new Thread(LoadOrder::save, "Bootstrap-LoadOrder");
+        Runtime.getRuntime().addShutdownHook(thread);
+    }
+
+    static void record(String module, String entry) {
+        if (module != null && SEEN.add(module + '/' + entry))
+            ORDER.add(new String[] { module, entry });
+    }
+
+    private static void save() {
+        var lines = new ArrayList<String>();
+        MODULES.forEach((name, path) -> lines.add(MODULE + '\t' + name + '\t' + path));
+        for (var entry : ORDER) {
+            if (MODULES.containsKey(entry[0]))
+                lines.add(entry[0] + '\t' + entry[1]);
+        }
+
+        try {
+            var file = Path.of(FILE).toAbsolutePath();
+            Files.createDirectories(file.getParent());
+            Files.write(file, lines, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            BootstrapLog.warn("Failed to write load order " + FILE + ": " + e);
+        }
+    }
+
+    static Recording read(Path file) throws IOException {
+        var modules = new LinkedHashMap<String, Path>();
+        var entries = new LinkedHashMap<String, List<String>>();
+        for (var line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (line.isEmpty())
+                continue;
+            var parts = line.split("\t");
+            if (parts.length == 3 && MODULE.equals(parts[0]))
+                modules.put(parts[1], Path.of(parts[2]));
+            else if (parts.length == 2)
+                entries.computeIfAbsent(parts[0], k -> new ArrayList<>()).add(parts[1]);
+            else
+                throw new IOException("Invalid load order line: " + line);
+        }
+        return new Recording(modules, entries);
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.bootstrap;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.minecraftforge.bootstrap.api.BootstrapClasspathModifier;
+
+/**
+ * Remembers the output of every {@link BootstrapClasspathModifier} that provides a
+ * {@link BootstrapClasspathModifier#fingerprint(List) fingerprint}, so that the next launch with the same
+ * inputs can replay it without calling the service.
+ *
+ * The key for each service is a hash of its class, fingerprint, input arguments, and input classpath
+ * including the identity of every file on it. Services are chained, so a miss on one service
+ * naturally causes misses on every service after it whose input changed.
+ */
+final class ModifierCache {
+    private static final String FILE = "modifiers.bin";
+    private static final int VERSION = 1;
+
+    record Result(String[] args, List<Path[]> classpath, boolean modified) {}
+    private record Entry(byte[] key, Result result) {}
+
+    private final Map<String, Entry> entries;
+    private boolean dirty = false;
+
+    private ModifierCache(Map<String, Entry> entries) {
+        this.entries = entries;
+    }
+
+    static ModifierCache load() {
+        var entries = LaunchCache.read(FILE, VERSION, ModifierCache::readCache);
+        return new ModifierCache(entries == null ? new HashMap<>() : entries);
+    }
+
+    void save() {
+        if (dirty)
+            LaunchCache.write(FILE, VERSION, out -> writeCache(out, entries));
+    }
+
+    /**
+     * Computes the cache key for calling the service with the specified inputs.
+     * This must be called before the service is, as services are allowed to modify the classpath in place.
+     *
+     * @return null if caching is disabled or the service does not support it.
+     */
+    byte[] key(BootstrapClasspathModifier service, String[] args, List<Path[]> classpath) {
+        if (!LaunchCache.enabled())
+            return null;
+
+        var fingerprint = service.fingerprint(classpath);
+        if (fingerprint == null)
+            return null;
+
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        update(digest, service.getClass().getName());
+        update(digest, fingerprint);
+        for (var arg : args)
+            update(digest, arg);
+        update(digest, "--classpath--");
+        for (var paths : classpath) {
+            if (paths == null) {
+                update(digest, "null");
+                continue;
+            }
+            update(digest, String.valueOf(paths.length));
+            for (var path : paths) {
+                // Replayed paths are read back with Path.of, so anything outside the default file system can't be cached
+                if (path.getFileSystem() != FileSystems.getDefault())
+                    return null;
+                update(digest, path.toString());
+                update(digest, Files.isDirectory(path) ? "directory" : LaunchCache.identity(path));
+            }
+        }
+        return digest.digest();
+    }
+
+    Result replay(BootstrapClasspathModifier service, byte[] key) {
+        if (key == null)
+            return null;
+
+        var entry = entries.get(service.getClass().getName());
+        if (entry == null || !Arrays.equals(entry.key, key))
+            return null;
+        return entry.result;
+    }
+
+    void store(BootstrapClasspathModifier service, byte[] key, Result result) {
+        if (key == null)
+            return;
+
+        // Copy so that later services modifying things in place don't change what we store
+        var classpath = new ArrayList<Path[]>(result.classpath.size());
+        for (var paths : result.classpath)
+            classpath.add(paths == null ? null : paths.clone());
+        entries.put(service.getClass().getName(), new Entry(key, new Result(result.args.clone(), classpath, result.modified)));
+        dirty = true;
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte)0);
+    }
+
+    /* ======================================================================
+     *                             Serialization
+     * ======================================================================
+     */
+
+    private static Map<String, Entry> readCache(DataInputStream in) throws IOException {
+        var ret = new HashMap<String, Entry>();
+        int count = in.readInt();
+        for (int x = 0; x < count; x++) {
+            var name = in.readUTF();
+            var key = LaunchCache.readBytes(in);
+            var modified = in.readBoolean();
+
+            var args = new String[in.readInt()];
+            for (int y = 0; y < args.length; y++)
+                args[y] = in.readUTF();
+
+            int size = in.readInt();
+            var classpath = new ArrayList<Path[]>(size);
+            for (int y = 0; y < size; y++) {
+                int length = in.readInt();
+                if (length == -1) {
+                    classpath.add(null);
+                    continue;
+                }
+                var paths = new Path[length];
+                for (int z = 0; z < length; z++)
+                    paths[z] = Path.of(in.readUTF());
+                classpath.add(paths);
+            }
+
+            ret.put(name, new Entry(key, new Result(args, classpath, modified)));
+        }
+        return ret;
+    }
+
+    private static void writeCache(DataOutputStream out, Map<String, Entry> entries) throws IOException {
+        out.writeInt(entries.size());
+        for (var entry : entries.entrySet()) {
+            var result = entry.getValue().result;
+            out.writeUTF(entry.getKey());
+            LaunchCache.writeBytes(out, entry.getValue().key);
+            out.writeBoolean(result.modified);
+
+            out.writeInt(result.args.length);
+            for (var arg : result.args)
+                out.writeUTF(arg);
+
+            out.writeInt(result.classpath.size());
+            for (var paths : result.classpath) {
+                if (paths == null) {
+                    out.writeInt(-1);
+                    continue;
+                }
+                out.writeInt(paths.length);
+                for (var path : paths)
+                    out.writeUTF(path.toString());
+            }
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.bootstrap;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.ServiceLoader;
+
+import net.minecraftforge.bootstrap.api.BootstrapClasspathModifier;
+import net.minecraftforge.bootstrap.api.BootstrapIO;
+
+/**
+ * Finds the {@link BootstrapClasspathModifier}s without asking every classpath entry for its services file, when we can.
+ * <ul>
+ *   <li>{@code bsl.modifiers}: The provider classes, comma separated and in order. Set by the shim from
+ *       {@code Bootstrap-Modifiers} in its properties. Blank means there are none.</li>
+ *   <li>Otherwise, with {@code bsl.cache}, the providers found by the last launch with the same classpath.</li>
+ *   <li>Otherwise, or if any cached provider fails to load, the {@link ServiceLoader}.</li>
+ * </ul>
+ * The cache key is the classpath we were started with, before packs and deduping, and the identity of every jar on it.
+ * For directories, which don't change when a file deep inside does, it is the identity of the services file itself.
+ */
+final class ModifierIndex {
+    static final String MODIFIERS = System.getProperty("bsl.modifiers");
+    private static final String FILE = "modifier-index.bin";
+    private static final int VERSION = 1;
+    private static final String SERVICE = "META-INF/services/" + BootstrapClasspathModifier.class.getName();
+
+    private record Index(byte[] key, List<String> providers) {}
+
+    private ModifierIndex() {}
+
+    /**
+     * @param classpath The classpath as started, whatever the class loader can see has to be on it
+     * @return Every modifier, in the order the ServiceLoader would have found them
+     */
+    static List<BootstrapClasspathModifier> find(ClassLoader cl, List<Path> classpath) {
+        if (MODIFIERS != null) {
+            var names = split(MODIFIERS);
+            if (Bootstrap.DEBUG) Bootstrap.log("Using modifiers from bsl.modifiers: " + names);
+            var ret = load(cl, names);
+            if (ret == null)
+                throw new IllegalStateException("Could not load every modifier in bsl.modifiers: " + MODIFIERS);
+            return ret;
+        }
+
+        var key = key(classpath);
+        if (key != null) {
+            var index = LaunchCache.read(FILE, VERSION, ModifierIndex::readIndex);
+            if (index != null && Arrays.equals(index.key, key)) {
+                var ret = load(cl, index.providers);
+                if (ret != null) {
+                    if (Bootstrap.DEBUG) Bootstrap.log("Using cached modifiers: " + index.providers);
+                    return ret;
+                }
+                if (Bootstrap.DEBUG) Bootstrap.log("Cached modifiers are stale, scanning the classpath");
+            }
+        }
+
+        var ret = new ArrayList<BootstrapClasspathModifier>();
+        ServiceLoader.load(BootstrapClasspathModifier.class, cl).forEach(ret::add);
+        if (key != null) {
+            var providers = ret.stream().map(s -> s.getClass().getName()).toList();
+            LaunchCache.write(FILE, VERSION, out -> writeIndex(out, new Index(key, providers)));
+        }
+        return ret;
+    }
+
+    private static List<String> split(String value) {
+        var ret = new ArrayList<String>();
+        for (var part : value.split(",")) {
+            part = part.trim();
+            if (!part.isEmpty())
+                ret.add(part);
+        }
+        return ret;
+    }
+
+    // Same as ServiceLoader on the classpath, a public no argument constructor. Null if anything is missing.
+    private static List<BootstrapClasspathModifier> load(ClassLoader cl, List<String> names) {
+        var ret = new ArrayList<BootstrapClasspathModifier>(names.size());
+        for (var name : names) {
+            try {
+                var cls = Class.forName(name, true, cl).asSubclass(BootstrapClasspathModifier.class);
+                ret.add(cls.getConstructor().newInstance());
+            } catch (ReflectiveOperationException | ClassCastException | LinkageError e) {
+                if (Bootstrap.DEBUG) Bootstrap.log("Failed to load modifier " + name + ": " + e);
+                return null;
+            }
+        }
+        return ret;
+    }
+
+    private static byte[] key(List<Path> classpath) {
+        if (!LaunchCache.enabled())
+            return null;
+
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        for (var path : classpath) {
+            if (path.getFileSystem() != FileSystems.getDefault())
+                return null;
+            update(digest, path.toString());
+            update(digest, BootstrapIO.isDirectory(path) ? LaunchCache.identity(path.resolve(SERVICE)) : LaunchCache.identity(path));
+        }
+        // The pack's libraries aren't on the classpath we're given, but the shim's loader can see them
+        if (Bootstrap.PACK != null)
+            update(digest, "pack:" + LaunchCache.identity(Path.of(Bootstrap.PACK)));
+        return digest.digest();
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte)0);
+    }
+
+    /* ======================================================================
+     *                             Serialization
+     * ======================================================================
+     */
+
+    private static Index readIndex(DataInputStream in) throws IOException {
+        var key = LaunchCache.readBytes(in);
+        int count = in.readInt();
+        var providers = new ArrayList<String>(count);
+        for (int x = 0; x < count; x++)
+            providers.add(in.readUTF());
+        return new Index(key, providers);
+    }
+
+    private static void writeIndex(DataOutputStream out, Index index) throws IOException {
+        LaunchCache.writeBytes(out, index.key);
+        out.writeInt(index.providers.size());
+        for (var provider : index.providers)
+            out.writeUTF(provider);
+    }
+}
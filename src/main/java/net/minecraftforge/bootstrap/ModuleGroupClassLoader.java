@@ -0,0 +1,352 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.bootstrap;
+
+import java.io.IOException;
+import java.lang.module.Configuration;
+import java.lang.module.ResolvedModule;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.security.CodeSource;
+import java.security.SecureClassLoader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import cpw.mods.jarhandling.SecureJar;
+
+/**
+ * Class loader for a group of modules in a layer where different modules can have different loaders.
+ *
+ * Every class in a package owned by one of our modules is defined here. Packages exported to our modules by
+ * any module we read, in this layer or a parent layer, are delegated directly to that module's loader.
+ * So loaders in the same layer only share a lock when one actually needs a class from the other.
+ * Anything else goes to the fallback loaders, same as the single SecureModuleClassLoader.
+ *
+ * Classes are verified through {@link SecureJar.ModuleDataProvider#verifyAndGetSigners(String, byte[])} just like
+ * the single loader does.
+ */
+class ModuleGroupClassLoader extends SecureClassLoader {
+    static {
+        ClassLoader.registerAsParallelCapable();
+    }
+
+    // All in layer order, so that searches and delegation don't depend on hashing
+    private final Map<String, SecureJar> modules = new LinkedHashMap<>();
+    private final Map<String, SecureJar> packages = new LinkedHashMap<>();
+    private final Map<String, ClassLoader> remote = new LinkedHashMap<>();
+    private final List<ClassLoader> fallback;
+    private final ClassLoaderMetrics metrics;
+
+    private ModuleGroupClassLoader(String name, List<ClassLoader> fallback) {
+        super(name, null);
+        this.fallback = fallback;
+        this.metrics = ClassLoaderMetrics.create(name);
+    }
+
+    /**
+     * Creates a loader for every group, and wires up delegation between them.
+     *
+     * @param jars     The modules, in layer order
+     * @param grouping Returns the group name for a module
+     * @return Module name to loader in layer order, suitable for {@link ModuleLayer#defineModules(Configuration, Function)}
+     */
+    static Map<String, ClassLoader> create(String name, Configuration cfg, List<ModuleLayer> parents, List<SecureJar> jars,
+            Function<SecureJar, String> grouping, List<ClassLoader> fallback) {
+        var groups = new LinkedHashMap<String, ModuleGroupClassLoader>();
+        var ret = new LinkedHashMap<String, ClassLoader>();
+        var order = new HashMap<String, Integer>();
+
+        for (var jar : jars) {
+            var group = grouping.apply(jar);
+            var loader = groups.computeIfAbsent(group, k -> new ModuleGroupClassLoader(name + '-' + k, fallback));
+            loader.modules.put(jar.name(), jar);
+            for (var pkg : jar.moduleDataProvider().descriptor().packages())
+                loader.packages.put(pkg, jar);
+            ret.put(jar.name(), loader);
+            order.put(jar.name(), order.size());
+        }
+
+        for (var loader : groups.values()) {
+            for (var moduleName : loader.modules.keySet()) {
+                var module = cfg.findModule(moduleName).orElseThrow();
+                // Modules in this layer first, same as the layer order, then the parents
+                var reads = new ArrayList<>(module.reads());
+                reads.sort(Comparator.comparing((ResolvedModule r) -> order.getOrDefault(r.name(), Integer.MAX_VALUE)).thenComparing(ResolvedModule::name));
+                for (var read : reads) {
+                    var target = read.configuration() == cfg ? ret.get(read.name()) : findLoader(parents, read.name());
+                    if (target == loader)
+                        continue;
+                    for (var pkg : exported(read, moduleName))
+                        loader.remote.putIfAbsent(pkg, target);
+                }
+            }
+        }
+
+        if (Bootstrap.DEBUG) {
+            Bootstrap.log("Module class loaders:");
+            groups.values().forEach(l -> Bootstrap.log("    " + l.getName() + ": " + String.join(", ", l.modules.keySet())));
+        }
+
+        return ret;
+    }
+
+    private static ClassLoader findLoader(List<ModuleLayer> parents, String module) {
+        for (var layer : parents) {
+            var found = layer.findModule(module);
+            if (found.isPresent()) {
+                var ret = found.get().getClassLoader();
+                // Null is the boot loader, which the platform loader will delegate to
+                return ret == null ? ClassLoader.getPlatformClassLoader() : ret;
+            }
+        }
+        return ClassLoader.getPlatformClassLoader();
+    }
+
+    private static List<String> exported(ResolvedModule module, String reader) {
+        var desc = module.reference().descriptor();
+        if (desc.isAutomatic())
+            return new ArrayList<>(desc.packages());
+
+        var ret = new ArrayList<String>();
+        for (var export : desc.exports()) {
+            if (!export.isQualified() || export.targets().contains(reader))
+                ret.add(export.source());
+        }
+        return ret;
+    }
+
+    @Override
+    public String toString() {
+        return getName() + modules.keySet();
+    }
+
+    private static String packageName(String name) {
+        int idx = name.lastIndexOf('.');
+        return idx == -1 ? "" : name.substring(0, idx);
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+        synchronized (getClassLoadingLock(name)) {
+            var ret = findLoadedClass(name);
+            if (ret == null) {
+                var pkg = packageName(name);
+                var jar = packages.get(pkg);
+                if (jar != null) {
+                    ret = defineModuleClass(jar, name);
+                } else {
+                    var loader = remote.get(pkg);
+                    if (loader != null)
+                        ret = loader.loadClass(name);
+                    else
+                        ret = loadFallback(name);
+                }
+            }
+
+            if (ret == null)
+                throw new ClassNotFoundException(name);
+
+            if (resolve)
+                resolveClass(ret);
+            return ret;
+        }
+    }
+
+    private Class<?> loadFallback(String name) {
+        for (var loader : fallback) {
+            try {
+                return loader.loadClass(name);
+            } catch (ClassNotFoundException e) {
+                // Try the next one
+            }
+        }
+
+        try {
+            return ClassLoader.getPlatformClassLoader().loadClass(name);
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        var jar = packages.get(packageName(name));
+        var ret = jar == null ? null : defineModuleClass(jar, name);
+        if (ret == null)
+            throw new ClassNotFoundException(name);
+        return ret;
+    }
+
+    @Override
+    protected Class<?> findClass(String moduleName, String name) {
+        var jar = packages.get(packageName(name));
+        if (jar == null || (moduleName != null && !moduleName.equals(jar.name())))
+            return null;
+
+        synchronized (getClassLoadingLock(name)) {
+            var ret = findLoadedClass(name);
+            return ret != null ? ret : defineModuleClass(jar, name);
+        }
+    }
+
+    private Class<?> defineModuleClass(SecureJar jar, String name) {
+        if (metrics == null)
+            return defineModuleClassImpl(jar, name);
+
+        var start = metrics.begin();
+        Class<?> ret = null;
+        try {
+            ret = defineModuleClassImpl(jar, name);
+            return ret;
+        } finally {
+            metrics.end(jar.name(), start, ret != null);
+        }
+    }
+
+    private Class<?> defineModuleClassImpl(SecureJar jar, String name) {
+        var path = name.replace('.', '/').concat(".class");
+        var meta = jar.moduleDataProvider();
+        var stream = meta.open(path);
+        if (stream.isEmpty())
+            return null;
+
+        byte[] data;
+        try (var is = stream.get()) {
+            data = is.readAllBytes();
+        } catch (IOException e) {
+            return null;
+        }
+
+        if (metrics != null)
+            metrics.bytes(data.length);
+        if (LoadOrder.ENABLED)
+            LoadOrder.record(jar.name(), path);
+        var signers = meta.verifyAndGetSigners(path, data);
+        URL location = null;
+        try {
+            var uri = meta.uri();
+            location = uri == null ? null : uri.toURL();
+        } catch (MalformedURLException | IllegalArgumentException e) {
+            // Not every file system has a URL handler, the code source is still valid without one
+        }
+        return defineClass(name, data, 0, data.length, new CodeSource(location, signers));
+    }
+
+    @Override
+    protected URL findResource(String moduleName, String name) throws IOException {
+        var jar = modules.get(moduleName);
+        var ret = jar == null ? null : toURL(jar, name);
+        if (metrics != null)
+            metrics.resource(moduleName, ret != null);
+        if (ret != null && LoadOrder.ENABLED)
+            LoadOrder.record(moduleName, name);
+        return ret;
+    }
+
+    /*
+     * Same encapsulation as the single loader and the JDK's: a resource in one of our packages is only found if it is
+     * a class, a directory, or the package is open. Anything outside our packages, like META-INF, is searched in every module.
+     */
+    @Override
+    protected URL findResource(String name) {
+        var pkg = resourcePackage(name);
+        var owner = packages.get(pkg);
+        for (var jar : owner != null ? List.of(owner) : modules.values()) {
+            var ret = toURL(jar, name);
+            if (ret != null && (owner == null || isVisible(owner, pkg, name, ret))) {
+                if (metrics != null)
+                    metrics.resource(jar.name(), true);
+                return ret;
+            }
+        }
+        if (metrics != null)
+            metrics.resource(null, false);
+        return null;
+    }
+
+    @Override
+    protected Enumeration<URL> findResources(String name) {
+        var ret = new ArrayList<URL>();
+        var pkg = resourcePackage(name);
+        var owner = packages.get(pkg);
+        for (var jar : owner != null ? List.of(owner) : modules.values()) {
+            var url = toURL(jar, name);
+            if (url != null && (owner == null || isVisible(owner, pkg, name, url)))
+                ret.add(url);
+        }
+        return Collections.enumeration(ret);
+    }
+
+    // Same as jdk.internal.module.Resources.toPackageName, a directory's own name isn't a package
+    private static String resourcePackage(String name) {
+        int idx = name.lastIndexOf('/');
+        return idx == -1 || idx == name.length() - 1 ? "" : name.substring(0, idx).replace('/', '.');
+    }
+
+    private static boolean isVisible(SecureJar jar, String pkg, String name, URL url) {
+        if (name.endsWith(".class") || url.toString().endsWith("/"))
+            return true;
+        var desc = jar.moduleDataProvider().descriptor();
+        if (desc.isAutomatic() || desc.isOpen())
+            return true;
+        for (var opens : desc.opens()) {
+            if (!opens.isQualified() && opens.source().equals(pkg))
+                return true;
+        }
+        return false;
+    }
+
+    @Override
+    public URL getResource(String name) {
+        var ret = findResource(name);
+        if (ret != null)
+            return ret;
+
+        for (var loader : fallback) {
+            ret = loader.getResource(name);
+            if (ret != null)
+                return ret;
+        }
+        return ClassLoader.getPlatformClassLoader().getResource(name);
+    }
+
+    // Same order as getResource. The fallbacks usually have the platform loader as a parent, so it's only listed once.
+    @Override
+    public Enumeration<URL> getResources(String name) throws IOException {
+        var ret = new LinkedHashMap<String, URL>();
+        add(ret, findResources(name));
+        for (var loader : fallback)
+            add(ret, loader.getResources(name));
+        add(ret, ClassLoader.getPlatformClassLoader().getResources(name));
+        return Collections.enumeration(ret.values());
+    }
+
+    // Keyed by their text, URL.equals can do DNS lookups
+    private static void add(Map<String, URL> urls, Enumeration<URL> found) {
+        while (found.hasMoreElements()) {
+            var url = found.nextElement();
+            urls.putIfAbsent(url.toExternalForm(), url);
+        }
+    }
+
+    private static URL toURL(SecureJar jar, String name) {
+        var found = jar.moduleDataProvider().findFile(name);
+        if (found.isEmpty())
+            return null;
+        try {
+            return found.get().toURL();
+        } catch (MalformedURLException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.bootstrap;
+
+import java.util.ServiceLoader;
+import java.util.stream.Collectors;
+
+import net.minecraftforge.bootstrap.api.BootstrapEntryPoint;
+import net.minecraftforge.bootstrap.api.BootstrapLog;
+
+/**
+ * Entry point used by argument files exported with {@code bsl.export}.
+ * Everything is already on the JVM's module path, so all that is left is finding the entry point.
+ */
+public class ModulePathMain {
+    public static void main(String[] args) {
+        var services = ServiceLoader.load(ModuleLayer.boot(), BootstrapEntryPoint.class).stream().toList();
+
+        if (services.isEmpty())
+            throw new IllegalStateException("Could not find any " + BootstrapEntryPoint.class.getName() + " service providers");
+
+        if (services.size() > 1) {
+            throw new IllegalStateException("Found multiple " + BootstrapEntryPoint.class.getName() + " service providers: " +
+                services.stream().map(p -> p.get().name()).collect(Collectors.joining(", ")));
+        }
+
+        var loader = services.get(0).get();
+        if (Bootstrap.DEBUG) Bootstrap.log("Starting: " + loader.getClass().getModule().getName() + '/' + loader.name());
+        BootstrapLog.handoff();
+        loader.main(args);
+    }
+}
@@ -0,0 +1,735 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.bootstrap;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.AccessMode;
+import java.nio.file.CopyOption;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileStore;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.ProviderMismatchException;
+import java.nio.file.ReadOnlyFileSystemException;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.FileAttributeView;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.UserPrincipalLookupService;
+import java.nio.file.spi.FileSystemProvider;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.minecraftforge.bootstrap.api.BootstrapIO;
+
+/**
+ * Read only view of the library pack that the shim writes with {@code --pack}, the format is documented on the shim's Pack class.
+ *
+ * The whole pack is memory mapped once, and every library is a slice of that mapping. The libraries are stored as is,
+ * so the JDK's zip file system can open them in place through {@link #newByteChannel}, without extracting them anywhere.
+ *
+ * Paths are the library's path relative to {@code libraries/}, with every parent directory implied by the names.
+ * URIs are {@code bslpack:<pack file>!<library>}, which only the shim knows how to turn into a URL, so this is
+ * only used when the shim tells us about a pack using the {@code bsl.pack} system property.
+ */
+final class PackFileSystem extends FileSystem {
+    static final String SCHEME = "bslpack";
+    private static final byte[] MAGIC = { 'B', 'S', 'L', 'P', 'A', 'C', 'K', 0 };
+    private static final int VERSION = 1;
+    private static final Provider PROVIDER = new Provider();
+    private static final Map<Path, PackFileSystem> OPEN = new ConcurrentHashMap<>();
+
+    private final Path file;
+    private final MappedByteBuffer data;
+    private final FileTime modified;
+    private final Map<String, long[]> entries;
+    private final Set<String> directories = new HashSet<>();
+    private final PackPath root;
+
+    private PackFileSystem(Path file, MappedByteBuffer data, FileTime modified, Map<String, long[]> entries) {
+        this.file = file;
+        this.data = data;
+        this.modified = modified;
+        this.entries = entries;
+        this.root = new PackPath(this, "/");
+
+        directories.add("/");
+        for (var name : entries.keySet()) {
+            for (int idx = name.lastIndexOf('/'); idx > 0; idx = name.lastIndexOf('/', idx - 1))
+                directories.add(name.substring(0, idx));
+        }
+    }
+
+    static PackFileSystem open(Path file) throws IOException {
+        file = file.toAbsolutePath().normalize();
+        var ret = OPEN.get(file);
+        if (ret != null)
+            return ret;
+
+        synchronized (OPEN) {
+            ret = OPEN.get(file);
+            if (ret == null) {
+                ret = read(file);
+                OPEN.put(file, ret);
+            }
+            return ret;
+        }
+    }
+
+    private static PackFileSystem read(Path file) throws IOException {
+        var modified = Files.getLastModifiedTime(file);
+        try (var channel = FileChannel.open(file)) {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException("Library pack is too large: " + file);
+
+            var data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            var in = new DataInputStream(Channels.newInputStream(new BufferChannel(data.duplicate())));
+            var magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC))
+                throw new IOException("Not a library pack: " + file);
+            int version = in.readInt();
+            if (version != VERSION)
+                throw new IOException("Unsupported library pack version " + version + ": " + file);
+
+            int count = in.readInt();
+            var entries = new LinkedHashMap<String, long[]>();
+            for (int x = 0; x < count; x++) {
+                var name = '/' + in.readUTF();
+                long offset = in.readLong();
+                long length = in.readLong();
+                if (offset < 0 || length < 0 || offset + length > channel.size())
+                    throw new IOException("Invalid library pack entry " + name + ": " + file);
+                entries.put(name, new long[] { offset, length });
+            }
+
+            BootstrapIO.opened(file);
+            return new PackFileSystem(file, data, modified, entries);
+        }
+    }
+
+    /** Every library, in classpath order */
+    List<Path> libraries() {
+        var ret = new ArrayList<Path>(entries.size());
+        for (var name : entries.keySet())
+            ret.add(new PackPath(this, name));
+        return ret;
+    }
+
+    Path getPackFile() {
+        return file;
+    }
+
+    private ByteBuffer slice(String name) {
+        var entry = entries.get(name);
+        return data.slice((int)entry[0], (int)entry[1]);
+    }
+
+    private static PackPath check(Path path) {
+        if (!(path instanceof PackPath ret))
+            throw new ProviderMismatchException();
+        return ret;
+    }
+
+    @Override
+    public FileSystemProvider provider() {
+        return PROVIDER;
+    }
+
+    @Override
+    public void close() {
+        // The mapping is shared by everything that has a path into it, so it lives as long as they do
+    }
+
+    @Override
+    public boolean isOpen() {
+        return true;
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return true;
+    }
+
+    @Override
+    public String getSeparator() {
+        return "/";
+    }
+
+    @Override
+    public Iterable<Path> getRootDirectories() {
+        return List.of(root);
+    }
+
+    @Override
+    public Iterable<FileStore> getFileStores() {
+        return List.of();
+    }
+
+    @Override
+    public Set<String> supportedFileAttributeViews() {
+        return Set.of("basic");
+    }
+
+    @Override
+    public Path getPath(String first, String... more) {
+        if (more.length == 0)
+            return new PackPath(this, first);
+        var sb = new StringBuilder(first);
+        for (var part : more) {
+            if (!part.isEmpty())
+                sb.append('/').append(part);
+        }
+        return new PackPath(this, sb.toString());
+    }
+
+    @Override
+    public PathMatcher getPathMatcher(String syntaxAndPattern) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public UserPrincipalLookupService getUserPrincipalLookupService() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public WatchService newWatchService() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String toString() {
+        return file.toString();
+    }
+
+    private static final class Provider extends FileSystemProvider {
+        @Override
+        public String getScheme() {
+            return SCHEME;
+        }
+
+        @Override
+        public FileSystem newFileSystem(URI uri, Map<String, ?> env) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public PackFileSystem getFileSystem(URI uri) {
+            var spec = uri.getRawSchemeSpecificPart();
+            int idx = spec.indexOf('!');
+            var ret = OPEN.get(packFile(idx == -1 ? spec : spec.substring(0, idx)));
+            if (ret == null)
+                throw new FileSystemNotFoundException(uri.toString());
+            return ret;
+        }
+
+        /*
+         * The pack file is the raw path of a file: URI, like /C:/some%20dir/libraries.pack on Windows. The shim builds
+         * it with File.toURI, which leaves non-ASCII characters as is, while the default file system only takes them
+         * encoded, so it is decoded and encoded again as ASCII.
+         */
+        private static Path packFile(String raw) {
+            var path = URLDecoder.decode(raw.replace("+", "%2B"), StandardCharsets.UTF_8);
+            try {
+                return Path.of(URI.create(new URI("file", null, path, null).toASCIIString()));
+            } catch (URISyntaxException e) {
+                throw new IllegalArgumentException("Invalid library pack file: " + raw, e);
+            }
+        }
+
+        @Override
+        public Path getPath(URI uri) {
+            var spec = uri.getRawSchemeSpecificPart();
+            int idx = spec.indexOf('!');
+            if (idx == -1)
+                throw new IllegalArgumentException("Invalid library pack URI: " + uri);
+            return getFileSystem(uri).getPath('/' + URI.create(spec.substring(idx + 1)).getPath());
+        }
+
+        @Override
+        public SeekableByteChannel newByteChannel(Path path, Set<? extends OpenOption> options, FileAttribute<?>... attrs) throws IOException {
+            var pack = check(path).absolute();
+            for (var option : options) {
+                if (option != StandardOpenOption.READ)
+                    throw new ReadOnlyFileSystemException();
+            }
+            var fs = pack.getFileSystem();
+            if (!fs.entries.containsKey(pack.toString()))
+                throw fs.directories.contains(pack.toString()) ? new AccessDeniedException(pack.toString(), null, "Is a directory") : new NoSuchFileException(pack.toString());
+            return new BufferChannel(fs.slice(pack.toString()));
+        }
+
+        @Override
+        public DirectoryStream<Path> newDirectoryStream(Path dir, DirectoryStream.Filter<? super Path> filter) throws IOException {
+            var pack = check(dir).absolute();
+            var fs = pack.getFileSystem();
+            var name = pack.toString();
+            if (!fs.directories.contains(name))
+                throw fs.entries.containsKey(name) ? new NotDirectoryException(name) : new NoSuchFileException(name);
+
+            var prefix = name.equals("/") ? "/" : name + '/';
+            var children = new LinkedHashMap<String, Path>();
+            for (var candidates : List.of(fs.entries.keySet(), fs.directories)) {
+                for (var candidate : candidates) {
+                    if (!candidate.startsWith(prefix) || candidate.length() == prefix.length())
+                        continue;
+                    int idx = candidate.indexOf('/', prefix.length());
+                    var child = idx == -1 ? candidate : candidate.substring(0, idx);
+                    children.computeIfAbsent(child, k -> new PackPath(fs, k));
+                }
+            }
+
+            var ret = new ArrayList<Path>(children.size());
+            for (var child : children.values()) {
+                if (filter.accept(child))
+                    ret.add(child);
+            }
+            return new DirectoryStream<>() {
+                @Override
+                public Iterator<Path> iterator() {
+                    return ret.iterator();
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+        }
+
+        @Override
+        public void createDirectory(Path dir, FileAttribute<?>... attrs) {
+            throw new ReadOnlyFileSystemException();
+        }
+
+        @Override
+        public void delete(Path path) {
+            throw new ReadOnlyFileSystemException();
+        }
+
+        @Override
+        public void copy(Path source, Path target, CopyOption... options) {
+            throw new ReadOnlyFileSystemException();
+        }
+
+        @Override
+        public void move(Path source, Path target, CopyOption... options) {
+            throw new ReadOnlyFileSystemException();
+        }
+
+        @Override
+        public boolean isSameFile(Path path, Path path2) {
+            return path.toAbsolutePath().equals(path2.toAbsolutePath());
+        }
+
+        @Override
+        public boolean isHidden(Path path) {
+            return false;
+        }
+
+        @Override
+        public FileStore getFileStore(Path path) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void checkAccess(Path path, AccessMode... modes) throws IOException {
+            var pack = check(path).absolute();
+            var fs = pack.getFileSystem();
+            var name = pack.toString();
+            if (!fs.entries.containsKey(name) && !fs.directories.contains(name))
+                throw new NoSuchFileException(name);
+            for (var mode : modes) {
+                if (mode != AccessMode.READ)
+                    throw new AccessDeniedException(name);
+            }
+        }
+
+        @Override
+        public <V extends FileAttributeView> V getFileAttributeView(Path path, Class<V> type, LinkOption... options) {
+            return null;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public <A extends BasicFileAttributes> A readAttributes(Path path, Class<A> type, LinkOption... options) throws IOException {
+            if (type != BasicFileAttributes.class)
+                throw new UnsupportedOperationException("Unsupported attributes " + type.getName());
+
+            var pack = check(path).absolute();
+            var fs = pack.getFileSystem();
+            var name = pack.toString();
+            var entry = fs.entries.get(name);
+            if (entry == null && !fs.directories.contains(name))
+                throw new NoSuchFileException(name);
+            return (A)new Attributes(fs.modified, entry == null ? 0 : entry[1], entry == null);
+        }
+
+        @Override
+        public Map<String, Object> readAttributes(Path path, String attributes, LinkOption... options) throws IOException {
+            int idx = attributes.indexOf(':');
+            if (idx != -1) {
+                if (!"basic".equals(attributes.substring(0, idx)))
+                    throw new UnsupportedOperationException("Unsupported attributes " + attributes);
+                attributes = attributes.substring(idx + 1);
+            }
+
+            var attrs = readAttributes(path, BasicFileAttributes.class);
+            var all = new HashMap<String, Object>();
+            all.put("lastModifiedTime", attrs.lastModifiedTime());
+            all.put("lastAccessTime", attrs.lastAccessTime());
+            all.put("creationTime", attrs.creationTime());
+            all.put("size", attrs.size());
+            all.put("isRegularFile", attrs.isRegularFile());
+            all.put("isDirectory", attrs.isDirectory());
+            all.put("isSymbolicLink", false);
+            all.put("isOther", false);
+            all.put("fileKey", null);
+
+            if ("*".equals(attributes))
+                return all;
+
+            var ret = new HashMap<String, Object>();
+            for (var name : attributes.split(",")) {
+                if (!all.containsKey(name))
+                    throw new IllegalArgumentException("Unknown attribute " + name);
+                ret.put(name, all.get(name));
+            }
+            return ret;
+        }
+
+        @Override
+        public void setAttribute(Path path, String attribute, Object value, LinkOption... options) {
+            throw new ReadOnlyFileSystemException();
+        }
+    }
+
+    private static final class Attributes implements BasicFileAttributes {
+        private final FileTime time;
+        private final long size;
+        private final boolean directory;
+
+        private Attributes(FileTime time, long size, boolean directory) {
+            this.time = time;
+            this.size = size;
+            this.directory = directory;
+        }
+
+        @Override public FileTime lastModifiedTime() { return time; }
+        @Override public FileTime lastAccessTime() { return time; }
+        @Override public FileTime creationTime() { return time; }
+        @Override public boolean isRegularFile() { return !directory; }
+        @Override public boolean isDirectory() { return directory; }
+        @Override public boolean isSymbolicLink() { return false; }
+        @Override public boolean isOther() { return false; }
+        @Override public long size() { return size; }
+        @Override public Object fileKey() { return null; }
+    }
+
+    /** Read only channel over a slice of the mapping */
+    private static final class BufferChannel implements SeekableByteChannel {
+        private final ByteBuffer data;
+        private volatile boolean open = true;
+
+        private BufferChannel(ByteBuffer data) {
+            this.data = data;
+        }
+
+        @Override
+        public synchronized int read(ByteBuffer dst) {
+            if (!data.hasRemaining())
+                return -1;
+            int len = Math.min(dst.remaining(), data.remaining());
+            dst.put(dst.position(), data, data.position(), len);
+            dst.position(dst.position() + len);
+            data.position(data.position() + len);
+            return len;
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public synchronized long position() {
+            return data.position();
+        }
+
+        @Override
+        public synchronized SeekableByteChannel position(long position) {
+            data.position((int)Math.min(position, data.limit()));
+            return this;
+        }
+
+        @Override
+        public long size() {
+            return data.limit();
+        }
+
+        @Override
+        public SeekableByteChannel truncate(long size) {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() {
+            open = false;
+        }
+    }
+
+    static final class PackPath implements Path {
+        private final PackFileSystem fs;
+        private final String path;
+        private volatile String[] parts;
+
+        private PackPath(PackFileSystem fs, String path) {
+            this.fs = fs;
+            this.path = normalizeSlashes(path);
+        }
+
+        private static String normalizeSlashes(String path) {
+            var sb = new StringBuilder(path.length());
+            for (int x = 0; x < path.length(); x++) {
+                char c = path.charAt(x);
+                if (c == '/' && sb.length() > 0 && sb.charAt(sb.length() - 1) == '/')
+                    continue;
+                sb.append(c);
+            }
+            if (sb.length() > 1 && sb.charAt(sb.length() - 1) == '/')
+                sb.setLength(sb.length() - 1);
+            return sb.toString();
+        }
+
+        private String[] parts() {
+            if (parts == null) {
+                var relative = path.startsWith("/") ? path.substring(1) : path;
+                parts = relative.isEmpty() ? new String[0] : relative.split("/");
+            }
+            return parts;
+        }
+
+        private PackPath absolute() {
+            return (PackPath)(isAbsolute() ? this : new PackPath(fs, '/' + path)).normalize();
+        }
+
+        @Override
+        public PackFileSystem getFileSystem() {
+            return fs;
+        }
+
+        @Override
+        public boolean isAbsolute() {
+            return path.startsWith("/");
+        }
+
+        @Override
+        public Path getRoot() {
+            return isAbsolute() ? fs.root : null;
+        }
+
+        @Override
+        public Path getFileName() {
+            var parts = parts();
+            if (parts.length == 0)
+                return null;
+            return parts.length == 1 && !isAbsolute() ? this : new PackPath(fs, parts[parts.length - 1]);
+        }
+
+        @Override
+        public Path getParent() {
+            var parts = parts();
+            if (parts.length == 0)
+                return null;
+            if (parts.length == 1)
+                return getRoot();
+            return new PackPath(fs, (isAbsolute() ? "/" : "") + String.join("/", List.of(parts).subList(0, parts.length - 1)));
+        }
+
+        @Override
+        public int getNameCount() {
+            return parts().length;
+        }
+
+        @Override
+        public Path getName(int index) {
+            var parts = parts();
+            if (index < 0 || index >= parts.length)
+                throw new IllegalArgumentException();
+            return new PackPath(fs, parts[index]);
+        }
+
+        @Override
+        public Path subpath(int beginIndex, int endIndex) {
+            var parts = parts();
+            if (beginIndex < 0 || beginIndex >= parts.length || endIndex > parts.length || beginIndex >= endIndex)
+                throw new IllegalArgumentException();
+            return new PackPath(fs, String.join("/", List.of(parts).subList(beginIndex, endIndex)));
+        }
+
+        @Override
+        public boolean startsWith(Path other) {
+            if (!(other instanceof PackPath o) || o.fs != fs || o.isAbsolute() != isAbsolute())
+                return false;
+            var a = parts();
+            var b = o.parts();
+            if (b.length > a.length)
+                return false;
+            for (int x = 0; x < b.length; x++) {
+                if (!a[x].equals(b[x]))
+                    return false;
+            }
+            return true;
+        }
+
+        @Override
+        public boolean endsWith(Path other) {
+            if (!(other instanceof PackPath o) || o.fs != fs)
+                return false;
+            if (o.isAbsolute())
+                return equals(o);
+            var a = parts();
+            var b = o.parts();
+            if (b.length > a.length)
+                return false;
+            for (int x = 0; x < b.length; x++) {
+                if (!a[a.length - b.length + x].equals(b[x]))
+                    return false;
+            }
+            return true;
+        }
+
+        @Override
+        public Path normalize() {
+            var ret = new ArrayList<String>();
+            for (var part : parts()) {
+                if (part.equals("."))
+                    continue;
+                if (part.equals("..") && !ret.isEmpty() && !ret.get(ret.size() - 1).equals("..")) {
+                    ret.remove(ret.size() - 1);
+                    continue;
+                }
+                if (part.equals("..") && isAbsolute())
+                    continue;
+                ret.add(part);
+            }
+            return new PackPath(fs, (isAbsolute() ? "/" : "") + String.join("/", ret));
+        }
+
+        @Override
+        public Path resolve(Path other) {
+            var o = check(other);
+            if (o.isAbsolute())
+                return o;
+            if (o.path.isEmpty())
+                return this;
+            if (path.isEmpty())
+                return o;
+            return new PackPath(fs, path + '/' + o.path);
+        }
+
+        @Override
+        public Path relativize(Path other) {
+            var o = check(other);
+            if (o.isAbsolute() != isAbsolute())
+                throw new IllegalArgumentException("Can't relativize " + other + " against " + this);
+            var a = parts();
+            var b = o.parts();
+            int common = 0;
+            while (common < a.length && common < b.length && a[common].equals(b[common]))
+                common++;
+            var ret = new ArrayList<String>();
+            for (int x = common; x < a.length; x++)
+                ret.add("..");
+            for (int x = common; x < b.length; x++)
+                ret.add(b[x]);
+            return new PackPath(fs, String.join("/", ret));
+        }
+
+        @Override
+        public URI toUri() {
+            // Same layout the shim's URL handler expects
+            try {
+                var name = new URI(null, null, absolute().path.substring(1), null).getRawPath();
+                return URI.create(SCHEME + ':' + fs.file.toUri().getRawPath() + '!' + name);
+            } catch (URISyntaxException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
+
+        @Override
+        public Path toAbsolutePath() {
+            return isAbsolute() ? this : absolute();
+        }
+
+        @Override
+        public Path toRealPath(LinkOption... options) throws IOException {
+            var ret = absolute();
+            fs.provider().checkAccess(ret);
+            return ret;
+        }
+
+        @Override
+        public WatchKey register(WatchService watcher, WatchEvent.Kind<?>[] events, WatchEvent.Modifier... modifiers) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int compareTo(Path other) {
+            return path.compareTo(check(other).path);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof PackPath o && o.fs == fs && o.path.equals(path);
+        }
+
+        @Override
+        public int hashCode() {
+            return path.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return path;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.bootstrap;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers the classes and resources a parent loader didn't have, enabled by setting {@code bsl.misscache} to the
+ * number of names to remember. Our loaders ask their fallback parent for everything that isn't in the runtime layer,
+ * and when that parent is a loader over the whole classpath, asking again for the same optional class or resource
+ * searches it all again.
+ *
+ * The least recently used names are dropped once it is full. Everything is forgotten if the parent gained URLs, which
+ * is only checked when a name is found in the cache, as that is the only time an added URL could change the answer.
+ * So only URLClassLoaders are wrapped, like CLEANED-BOOTSTRAP. Any other parent, like the JDK's app class loader, can
+ * grow in ways we can't see, such as agents appending to it through Instrumentation, and is used as is.
+ */
+final class ParentMissCache extends ClassLoader {
+    static {
+        ClassLoader.registerAsParallelCapable();
+    }
+
+    static final int SIZE = Integer.getInteger("bsl.misscache", 0);
+    // Resource names can look like class names, so they are kept apart
+    private static final char RESOURCE = '/';
+
+    private final URLClassLoader delegate;
+    private final Map<String, Boolean> missing;
+    private int generation;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    private ParentMissCache(URLClassLoader delegate, int size) {
+        super(Objects.requireNonNullElse(delegate.getName(), "PARENT") + "-MISSES", null);
+        this.delegate = delegate;
+        this.generation = generation();
+        this.missing = new LinkedHashMap<>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                if (size() <= size)
+                    return false;
+                evictions.increment();
+                return true;
+            }
+        };
+    }
+
+    /**
+     * @return A loader that asks the parent for anything it hasn't already said it doesn't have,
+     *         or the parent itself if the cache is disabled or the parent's classpath can't be watched
+     */
+    static ClassLoader wrap(ClassLoader parent) {
+        if (SIZE <= 0 || parent == null)
+            return parent;
+
+        if (!(parent instanceof URLClassLoader url)) {
+            if (Bootstrap.DEBUG)
+                Bootstrap.log("Not caching misses in " + parent + ", its classpath can change without us knowing");
+            return parent;
+        }
+        return new ParentMissCache(url, SIZE);
+    }
+
+    /** Number of lookups answered from the cache, without asking the parent */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /** Number of lookups passed on to the parent */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /** Number of names dropped because the cache was full */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /** Number of times everything was dropped because the parent's search path changed */
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+
+    @Override
+    public String toString() {
+        int size;
+        synchronized (missing) {
+            size = missing.size();
+        }
+        return getName() + "[size=" + size + '/' + SIZE + ", hits=" + getHits() + ", misses=" + getMisses() +
+            ", evictions=" + getEvictions() + ", invalidations=" + getInvalidations() + ']';
+    }
+
+    // getURLs copies the array, so this is only asked when the answer matters
+    private int generation() {
+        return delegate.getURLs().length;
+    }
+
+    /**
+     * @return -1 if the parent is known not to have it, otherwise the generation to {@link #remember(String, int)} a miss in
+     */
+    private int known(String key) {
+        synchronized (missing) {
+            if (missing.get(key) != null) {
+                int current = generation();
+                if (current == generation) {
+                    hits.increment();
+                    return -1;
+                }
+                missing.clear();
+                generation = current;
+                invalidations.increment();
+            }
+            misses.increment();
+            return generation;
+        }
+    }
+
+    /*
+     * If the parent grew while we were asking it the name goes in anyway, and the next hit sees the new URL count and
+     * drops everything. Unless a hit already did while we were asking, then the name could be stale.
+     */
+    private void remember(String key, int generation) {
+        synchronized (missing) {
+            if (generation == this.generation)
+                missing.put(key, Boolean.TRUE);
+        }
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+        int generation = known(name);
+        if (generation == -1)
+            throw new ClassNotFoundException(name);
+        try {
+            return delegate.loadClass(name);
+        } catch (ClassNotFoundException e) {
+            remember(name, generation);
+            throw e;
+        }
+    }
+
+    @Override
+    public URL getResource(String name) {
+        var key = RESOURCE + name;
+        int generation = known(key);
+        if (generation == -1)
+            return null;
+        var ret = delegate.getResource(name);
+        if (ret == null)
+            remember(key, generation);
+        return ret;
+    }
+
+    // Shares getResource's entries, a name with no first match has no matches at all
+    @Override
+    public Enumeration<URL> getResources(String name) throws IOException {
+        var key = RESOURCE + name;
+        int generation = known(key);
+        if (generation == -1)
+            return Collections.emptyEnumeration();
+        var ret = delegate.getResources(name);
+        if (!ret.hasMoreElements())
+            remember(key, generation);
+        return ret;
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.bootstrap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import net.minecraftforge.bootstrap.api.BootstrapIO;
+
+/**
+ * Worker threads for the boot stages that don't depend on each other, enabled by setting {@code bsl.pipeline} to the
+ * number of threads to use. When disabled everything runs on the calling thread, in order, exactly as before, except
+ * for {@link #mapParallel(List, Function)}.
+ *
+ * Each copy of Bootstrap gets its own pool, the threads time out once a stage is done with them so the copies
+ * that are left behind don't keep anything running.
+ */
+final class Pipeline {
+    static final int THREADS = Integer.getInteger("bsl.pipeline", 0);
+    private static final ThreadPoolExecutor EXECUTOR = enabled() ? create(THREADS) : null;
+
+    private Pipeline() {}
+
+    static boolean enabled() {
+        return THREADS > 1;
+    }
+
+    private static ThreadPoolExecutor create(int threads) {
+        var count = new AtomicInteger();
+        var loader = Pipeline.class.getClassLoader();
+        var ret = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), task -> {
+            var thread = new Thread(task, "Bootstrap-Pipeline-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setContextClassLoader(loader);
+            return thread;
+        });
+        ret.allowCoreThreadTimeOut(true);
+        return ret;
+    }
+
+    /**
+     * Runs the task in the background, or immediately if the pipeline is disabled.
+     * Failures are thrown from {@link #join(Future)}.
+     */
+    static <T> Future<T> submit(Callable<T> task) {
+        if (!enabled()) {
+            var ret = new FutureTask<>(task);
+            ret.run();
+            return ret;
+        }
+        return EXECUTOR.submit(inPhase(task));
+    }
+
+    /**
+     * Applies the task to every input, on as many threads as we have, and returns the results in the same order
+     * as the inputs. The first failure, in input order, is rethrown as is.
+     */
+    static <T, R> List<R> map(List<T> inputs, Function<T, R> task) {
+        if (!enabled() || inputs.size() < 2) {
+            var ret = new ArrayList<R>(inputs.size());
+            for (var input : inputs)
+                ret.add(task.apply(input));
+            return ret;
+        }
+        return map(inputs, task, EXECUTOR);
+    }
+
+    /**
+     * Same as {@link #map(List, Function)}, but in parallel even when the pipeline is disabled, for stages that only
+     * wait on I/O. Then a pool with at most one thread per processor is made for it, and shut down once done.
+     */
+    static <T, R> List<R> mapParallel(List<T> inputs, Function<T, R> task) {
+        int threads = Math.min(inputs.size(), Runtime.getRuntime().availableProcessors());
+        if (enabled() || threads < 2)
+            return map(inputs, task);
+
+        var pool = create(threads);
+        try {
+            return map(inputs, task, pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static <T, R> List<R> map(List<T> inputs, Function<T, R> task, ThreadPoolExecutor executor) {
+        var ret = new ArrayList<R>(inputs.size());
+        var futures = new ArrayList<Future<R>>(inputs.size());
+        for (var input : inputs)
+            futures.add(executor.submit(inPhase(() -> task.apply(input))));
+
+        try {
+            for (var future : futures)
+                ret.add(join(future));
+        } finally {
+            // Only does anything if we're failing, no point finishing work nobody will look at
+            for (var future : futures)
+                future.cancel(false);
+        }
+        return ret;
+    }
+
+    static <T> T join(Future<T> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            return sneak(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return sneak(e);
+        }
+    }
+
+    // I/O done by a worker is counted against whatever phase submitted it
+    @SuppressWarnings("try")
+    private static <T> Callable<T> inPhase(Callable<T> task) {
+        var phase = BootstrapIO.currentPhase();
+        if (phase == null)
+            return task;
+        return () -> {
+            try (var scope = BootstrapIO.phase(phase)) {
+                return task.call();
+            }
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E extends Throwable, R> R sneak(Throwable exception) throws E {
+        throw (E)exception;
+    }
+}
@@ -0,0 +1,320 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.bootstrap;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.CodeSigner;
+import java.security.Timestamp;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.jar.JarFile;
+import java.util.jar.JarInputStream;
+
+import cpw.mods.jarhandling.SecureJar;
+
+/**
+ * Verifies the signatures of every jar on the classpath before we start building SecureJars,
+ * so that a tampered jar fails the launch up front instead of at the first class load.
+ *
+ * Verifying means inflating and hashing every entry, so the results are stored in the launch cache and reused while
+ * the file's identity, its size, modification time and file key, and the fingerprint of its central directory are
+ * unchanged. The fingerprint catches jars replaced by tools that keep the size and modification time. A cached jar
+ * costs one stat and a read of its central directory, anything that changed is verified in full again. This is only
+ * the up front check, SecureJar still checks every class it defines against the signatures.
+ */
+final class VerificationCache {
+    private static final String FILE = "verification.bin";
+    private static final int VERSION = 3;
+    private static final String PKI_PATH = "PkiPath";
+
+    /**
+     * @param identity    {@link LaunchCache#identity(Path)} of the file when it was verified
+     * @param fingerprint {@link ClasspathDeduper#fingerprint(Path)} of the file when it was verified
+     * @param signers     Unique signer sets found in the jar, referenced by index from {@code entries}
+     * @param entries     Verification status for every signed or tampered entry, unlisted entries are {@link SecureJar.Status#NONE}
+     */
+    record Result(String identity, byte[] fingerprint, List<CodeSigner[]> signers, Map<String, EntryStatus> entries) {
+        List<String> invalid() {
+            var ret = new ArrayList<String>();
+            entries.forEach((name, status) -> {
+                if (status.status == SecureJar.Status.INVALID)
+                    ret.add(name);
+            });
+            return ret;
+        }
+    }
+
+    /**
+     * @param signer Index into {@link Result#signers()}, or -1 for unsigned entries
+     */
+    record EntryStatus(SecureJar.Status status, int signer) {}
+
+    private final Map<String, Result> cache;
+    private final Map<String, Result> results = new TreeMap<>();
+    private int hits = 0;
+    private int misses = 0;
+
+    private VerificationCache(Map<String, Result> cache) {
+        this.cache = cache;
+    }
+
+    static VerificationCache load() {
+        var cache = LaunchCache.read(FILE, VERSION, VerificationCache::readCache);
+        return new VerificationCache(cache == null ? Map.of() : cache);
+    }
+
+    void save() {
+        LaunchCache.write(FILE, VERSION, out -> writeCache(out, results));
+    }
+
+    int hits() {
+        return hits;
+    }
+
+    int misses() {
+        return misses;
+    }
+
+    /**
+     * Verifies every jar in the classpath, throwing an exception listing every invalid entry if anything has been tampered with.
+     */
+    void verify(List<Path[]> classpath) {
+        var errors = new ArrayList<String>();
+        for (var paths : classpath) {
+            for (var path : paths) {
+                if (Files.isDirectory(path))
+                    continue;
+
+                var result = verify(path);
+                for (var name : result.invalid())
+                    errors.add(path + "!/" + name);
+            }
+        }
+
+        if (!errors.isEmpty())
+            throw new IllegalStateException("Invalid signatures found in " + errors.size() + " entries:\n    " + String.join("\n    ", errors));
+    }
+
+    Result verify(Path path) {
+        var key = path.toAbsolutePath().toString();
+        var identity = LaunchCache.identity(path);
+        try {
+            var fingerprint = ClasspathDeduper.fingerprint(path);
+            var cached = cache.get(key);
+            if (cached != null && cached.identity.equals(identity) && Arrays.equals(cached.fingerprint, fingerprint)) {
+                hits++;
+                results.put(key, cached);
+                return cached;
+            }
+
+            misses++;
+            if (Bootstrap.DEBUG)
+                Bootstrap.log("Verifying: " + path);
+            var ret = verifyImpl(path, identity, fingerprint);
+            results.put(key, ret);
+            return ret;
+        } catch (IOException e) {
+            return sneak(e);
+        }
+    }
+
+    private static Result verifyImpl(Path path, String identity, byte[] fingerprint) throws IOException {
+        var signers = new ArrayList<CodeSigner[]>();
+        var entries = new TreeMap<String, EntryStatus>();
+
+        if (path.getFileSystem() != FileSystems.getDefault())
+            return verifyStream(path, identity, fingerprint);
+
+        try (var jar = new JarFile(path.toFile(), true)) {
+            if (!hasSignatureFiles(jar))
+                return new Result(identity, fingerprint, List.of(), Map.of());
+
+            var buf = new byte[0x2000];
+            for (var itr = jar.entries(); itr.hasMoreElements(); ) {
+                var entry = itr.nextElement();
+                if (entry.isDirectory() || isSignatureFile(entry.getName()))
+                    continue;
+
+                try (var is = jar.getInputStream(entry)) {
+                    // The entry's signers are only known once it has been read to the end
+                    while (is.read(buf) != -1);
+                } catch (SecurityException e) {
+                    entries.put(entry.getName(), new EntryStatus(SecureJar.Status.INVALID, -1));
+                    continue;
+                }
+
+                entries.put(entry.getName(), status(signers, entry.getCodeSigners()));
+            }
+        }
+
+        return new Result(identity, fingerprint, signers, entries);
+    }
+
+    /*
+     * JarFile needs a real file, so anything else, like a library in the shim's pack, is streamed instead.
+     * JarInputStream only verifies jars that have their signature files right after the manifest, which is where
+     * jarsigner puts them, so a jar laid out any other way comes out as unsigned.
+     */
+    private static Result verifyStream(Path path, String identity, byte[] fingerprint) throws IOException {
+        var signers = new ArrayList<CodeSigner[]>();
+        var entries = new TreeMap<String, EntryStatus>();
+        var signed = false;
+
+        try (var jar = new JarInputStream(Files.newInputStream(path), true)) {
+            var buf = new byte[0x2000];
+            for (var entry = jar.getNextJarEntry(); entry != null; entry = jar.getNextJarEntry()) {
+                if (isSignatureFile(entry.getName())) {
+                    signed = true;
+                    continue;
+                }
+                if (entry.isDirectory())
+                    continue;
+
+                try {
+                    while (jar.read(buf) != -1);
+                } catch (SecurityException e) {
+                    entries.put(entry.getName(), new EntryStatus(SecureJar.Status.INVALID, -1));
+                    continue;
+                }
+                entries.put(entry.getName(), status(signers, entry.getCodeSigners()));
+            }
+        }
+
+        if (!signed)
+            return new Result(identity, fingerprint, List.of(), Map.of());
+        return new Result(identity, fingerprint, signers, entries);
+    }
+
+    private static EntryStatus status(List<CodeSigner[]> signers, CodeSigner[] entrySigners) {
+        if (entrySigners == null)
+            return new EntryStatus(SecureJar.Status.UNVERIFIED, -1);
+
+        int idx = -1;
+        for (int x = 0; x < signers.size() && idx == -1; x++) {
+            if (Arrays.equals(signers.get(x), entrySigners))
+                idx = x;
+        }
+        if (idx == -1) {
+            idx = signers.size();
+            signers.add(entrySigners);
+        }
+        return new EntryStatus(SecureJar.Status.VERIFIED, idx);
+    }
+
+    private static boolean hasSignatureFiles(JarFile jar) {
+        for (var itr = jar.entries(); itr.hasMoreElements(); ) {
+            if (isSignatureFile(itr.nextElement().getName()))
+                return true;
+        }
+        return false;
+    }
+
+    private static boolean isSignatureFile(String name) {
+        var upper = name.toUpperCase(Locale.ENGLISH);
+        if (!upper.startsWith("META-INF/") || upper.indexOf('/', 9) != -1)
+            return false;
+        return upper.endsWith(".SF") || upper.endsWith(".RSA") || upper.endsWith(".DSA") || upper.endsWith(".EC");
+    }
+
+    /* ======================================================================
+     *                             Serialization
+     * ======================================================================
+     */
+
+    private static Map<String, Result> readCache(DataInputStream in) throws IOException {
+        try {
+            var factory = CertificateFactory.getInstance("X.509");
+            var ret = new HashMap<String, Result>();
+            int count = in.readInt();
+            for (int x = 0; x < count; x++) {
+                var key = in.readUTF();
+                var identity = in.readUTF();
+                var fingerprint = LaunchCache.readBytes(in);
+
+                var signers = new ArrayList<CodeSigner[]>();
+                int signerCount = in.readInt();
+                for (int y = 0; y < signerCount; y++) {
+                    var group = new CodeSigner[in.readInt()];
+                    for (int z = 0; z < group.length; z++) {
+                        var certs = factory.generateCertPath(new ByteArrayInputStream(LaunchCache.readBytes(in)), PKI_PATH);
+                        Timestamp timestamp = null;
+                        if (in.readBoolean()) {
+                            var date = new Date(in.readLong());
+                            var tsa = factory.generateCertPath(new ByteArrayInputStream(LaunchCache.readBytes(in)), PKI_PATH);
+                            timestamp = new Timestamp(date, tsa);
+                        }
+                        group[z] = new CodeSigner(certs, timestamp);
+                    }
+                    signers.add(group);
+                }
+
+                var statuses = SecureJar.Status.values();
+                var entries = new TreeMap<String, EntryStatus>();
+                int entryCount = in.readInt();
+                for (int y = 0; y < entryCount; y++)
+                    entries.put(in.readUTF(), new EntryStatus(statuses[in.readByte()], in.readInt()));
+
+                ret.put(key, new Result(identity, fingerprint, signers, entries));
+            }
+            return ret;
+        } catch (CertificateException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static void writeCache(DataOutputStream out, Map<String, Result> results) throws IOException {
+        try {
+            out.writeInt(results.size());
+            for (var entry : results.entrySet()) {
+                var result = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeUTF(result.identity);
+                LaunchCache.writeBytes(out, result.fingerprint);
+
+                out.writeInt(result.signers.size());
+                for (var group : result.signers) {
+                    out.writeInt(group.length);
+                    for (var signer : group) {
+                        LaunchCache.writeBytes(out, signer.getSignerCertPath().getEncoded(PKI_PATH));
+                        var timestamp = signer.getTimestamp();
+                        out.writeBoolean(timestamp != null);
+                        if (timestamp != null) {
+                            out.writeLong(timestamp.getTimestamp().getTime());
+                            LaunchCache.writeBytes(out, timestamp.getSignerCertPath().getEncoded(PKI_PATH));
+                        }
+                    }
+                }
+
+                out.writeInt(result.entries.size());
+                for (var status : result.entries.entrySet()) {
+                    out.writeUTF(status.getKey());
+                    out.writeByte(status.getValue().status.ordinal());
+                    out.writeInt(status.getValue().signer);
+                }
+            }
+        } catch (CertificateException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E extends Throwable, R> R sneak(Exception exception) throws E {
+        throw (E)exception;
+    }
+}